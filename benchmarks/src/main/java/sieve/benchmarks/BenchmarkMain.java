@@ -0,0 +1,19 @@
+package sieve.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line, in the usual JMH syntax,
+ * with the GC profiler attached so allocation rates are reported next to
+ * throughput. Example: {@code java -jar benchmarks.jar Counting -p tokens=1000000}
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class).build())
+				.run();
+	}
+}
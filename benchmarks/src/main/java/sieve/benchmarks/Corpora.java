@@ -0,0 +1,107 @@
+package sieve.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Reproducible synthetic corpora. Token ranks follow a Zipf distribution over
+ * a vocabulary whose size grows with the square root of the corpus size, as
+ * real vocabularies roughly do.
+ */
+public class Corpora {
+
+	public static final long SEED = 0x5EEDL;
+	public static final double ZIPF_EXPONENT = 1.07;
+
+	private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "ru", "sa", "ti", "vo", "ze", "bra", "che",
+			"dro", "fli", "gna", "pre", "stu", "tha", "wer" };
+
+	private Corpora() {
+	}
+
+	public static int vocabularySize(int tokens) {
+		return (int) Math.max(100, Math.min(2000000, 30 * Math.sqrt(tokens)));
+	}
+
+	public static String[] vocabulary(int size) {
+		String[] words = new String[size];
+		for (int i = 0; i < size; i++) {
+			StringBuilder word = new StringBuilder();
+			int n = i;
+			do {
+				word.append(SYLLABLES[n % SYLLABLES.length]);
+				n /= SYLLABLES.length;
+			} while (n > 0);
+			words[i] = word.toString();
+		}
+		return words;
+	}
+
+	/**
+	 * Returns vocabulary ranks of {@code tokens} tokens drawn from a Zipf
+	 * distribution.
+	 */
+	public static int[] zipfTokens(int tokens, int vocabularySize, long seed) {
+		double[] cumulative = new double[vocabularySize];
+		double sum = 0;
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+			cumulative[rank] = sum;
+		}
+		Random random = new Random(seed);
+		int[] result = new int[tokens];
+		for (int i = 0; i < tokens; i++) {
+			int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+			result[i] = Math.min(rank < 0 ? -rank - 1 : rank, vocabularySize - 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns one TreeTagger output line per vocabulary word, in the
+	 * {@code word\tPOS\tlemma} layout.
+	 */
+	public static String[] taggerOutputLines(String[] vocabulary) {
+		String[] lines = new String[vocabulary.length];
+		for (int i = 0; i < vocabulary.length; i++)
+			lines[i] = vocabulary[i] + "s\tNNS\t" + vocabulary[i];
+		return lines;
+	}
+
+	public static File writeAnkiExport(int[] tokens, String[] vocabulary) throws IOException {
+		File file = File.createTempFile("anki", ".txt");
+		file.deleteOnExit();
+		Writer out = new BufferedWriter(new FileWriter(file), 1 << 16);
+		try {
+			for (int token : tokens) {
+				out.write(vocabulary[token]);
+				out.write("\tthe translation of ");
+				out.write(vocabulary[token]);
+				out.write("\tdeck::tag\n");
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	public static File writeWordList(String[] vocabulary, int from, int count) throws IOException {
+		File file = File.createTempFile("filter", ".txt");
+		file.deleteOnExit();
+		Writer out = new BufferedWriter(new FileWriter(file), 1 << 16);
+		try {
+			for (int i = 0; i < count; i++) {
+				out.write(vocabulary[(from + i) % vocabulary.length]);
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,76 @@
+package sieve.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sieve.ParallelCounter;
+import sieve.TaggerOutput;
+import sieve.WordCounter;
+
+/**
+ * Counting lemmas of tagger output, the work done between the tagger and the
+ * ranking in Count&Sort. One operation counts the whole corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class CountingBenchmark {
+
+	@Param({ "10000", "100000", "1000000", "10000000", "100000000" })
+	public int tokens;
+
+	private int[] corpus;
+	private String[] lines;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		String[] vocabulary = Corpora.vocabulary(Corpora.vocabularySize(tokens));
+		corpus = Corpora.zipfTokens(tokens, vocabulary.length, Corpora.SEED);
+		lines = Corpora.taggerOutputLines(vocabulary);
+	}
+
+	@Benchmark
+	public WordCounter wordCounter() {
+		WordCounter counter = new WordCounter();
+		TaggerOutput parser = new TaggerOutput();
+		for (int token : corpus) {
+			String line = lines[token];
+			parser.parse(line);
+			counter.add(line, parser.lemmaStart(), parser.lemmaEnd());
+		}
+		return counter;
+	}
+
+	@Benchmark
+	public WordCounter splitLines() {
+		WordCounter counter = new WordCounter();
+		for (int token : corpus) {
+			String[] splitted = lines[token].split("\t");
+			counter.add(splitted[splitted.length - 1]);
+		}
+		return counter;
+	}
+
+	@Benchmark
+	public WordCounter parallelCounter() throws Exception {
+		ParallelCounter counter = new ParallelCounter(Runtime.getRuntime().availableProcessors());
+		for (int token : corpus)
+			counter.add(lines[token]);
+		return counter.finish();
+	}
+}
@@ -0,0 +1,62 @@
+package sieve.benchmarks;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sieve.FilterSet;
+import sieve.Sieve;
+
+/**
+ * Filtering a ranked list against an 80,000 word "known words" list, up to
+ * half of which occur in the ranked list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class FilterBenchmark {
+
+	private static final int FILTER_WORDS = 80000;
+
+	@Param({ "10000", "100000", "1000000", "10000000", "100000000" })
+	public int tokens;
+
+	private String[] rankedLines;
+	private FilterSet filterSet;
+
+	@Setup(Level.Trial)
+	public void generate() throws Exception {
+		String[] vocabulary = Corpora.vocabulary(Corpora.vocabularySize(tokens) + FILTER_WORDS);
+		int ranked = vocabulary.length - FILTER_WORDS;
+		rankedLines = new String[ranked];
+		for (int i = 0; i < ranked; i++)
+			rankedLines[i] = (i + 1) + " " + vocabulary[i] + " " + (ranked - i);
+		File filter = Corpora.writeWordList(vocabulary, Math.max(0, ranked - FILTER_WORDS / 2), FILTER_WORDS);
+		filterSet = FilterSet.load(Collections.singletonList(filter.getAbsolutePath()));
+	}
+
+	@Benchmark
+	public int filter() {
+		int passed = 0;
+		for (String line : rankedLines)
+			if (Sieve.passesFilter(line, filterSet))
+				passed++;
+		return passed;
+	}
+}
@@ -0,0 +1,74 @@
+package sieve.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The linear list scan Count&Sort used before the hash counter, kept as a
+ * baseline. It is quadratic, so only the smaller corpora are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LegacyCountingBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int tokens;
+
+	private int[] corpus;
+	private String[] lines;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		String[] vocabulary = Corpora.vocabulary(Corpora.vocabularySize(tokens));
+		corpus = Corpora.zipfTokens(tokens, vocabulary.length, Corpora.SEED);
+		lines = Corpora.taggerOutputLines(vocabulary);
+	}
+
+	@Benchmark
+	public List<Stat> addWordToList() {
+		List<Stat> list = new ArrayList<Stat>();
+		for (int token : corpus) {
+			String[] splitted = lines[token].split("\t");
+			addWordToList(splitted[splitted.length - 1], list);
+		}
+		return list;
+	}
+
+	private static void addWordToList(String word, List<Stat> list) {
+		for (Stat s : list) {
+			if (s.word.equals(word)) {
+				s.occurrences++;
+				return;
+			}
+		}
+		list.add(new Stat(word, 1));
+	}
+
+	static class Stat {
+		String word;
+		int occurrences;
+
+		Stat(String word, int occurrences) {
+			this.word = word;
+			this.occurrences = occurrences;
+		}
+	}
+}
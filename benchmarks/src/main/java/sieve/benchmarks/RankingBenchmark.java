@@ -0,0 +1,58 @@
+package sieve.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sieve.LineSink;
+import sieve.Sieve;
+import sieve.WordCounter;
+
+/**
+ * Ranking counted lemmas by frequency and formatting the "with stats" lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class RankingBenchmark {
+
+	@Param({ "10000", "100000", "1000000", "10000000", "100000000" })
+	public int tokens;
+
+	private WordCounter counter;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		String[] vocabulary = Corpora.vocabulary(Corpora.vocabularySize(tokens));
+		counter = new WordCounter();
+		for (int token : Corpora.zipfTokens(tokens, vocabulary.length, Corpora.SEED))
+			counter.add(vocabulary[token]);
+	}
+
+	@Benchmark
+	public void rank(final Blackhole blackhole) throws Exception {
+		Sieve.rank(counter, true, new LineSink() {
+			public void line(String line) {
+				blackhole.consume(line);
+			}
+
+			public void close() {
+			}
+		});
+	}
+}
@@ -0,0 +1,83 @@
+package sieve.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sieve.AnkiStripper;
+import sieve.Cancellable;
+
+/**
+ * Stripping translations from an Anki export with one card per token, with
+ * the memory-mapped stripper and with the split-based loop it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StripBenchmark {
+
+	private static final Cancellable NEVER_CANCELLED = new Cancellable() {
+		public boolean isCancelled() {
+			return false;
+		}
+	};
+
+	@Param({ "10000", "100000", "1000000", "10000000", "100000000" })
+	public int tokens;
+
+	private File export;
+	private File output;
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		String[] vocabulary = Corpora.vocabulary(Corpora.vocabularySize(tokens));
+		export = Corpora.writeAnkiExport(Corpora.zipfTokens(tokens, vocabulary.length, Corpora.SEED), vocabulary);
+		output = File.createTempFile("stripped", ".txt");
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() {
+		export.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public void mappedStripper() throws IOException {
+		AnkiStripper.strip(export, output, NEVER_CANCELLED);
+	}
+
+	@Benchmark
+	public void splitLoop() throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(export)));
+		PrintWriter out = new PrintWriter(new FileWriter(output));
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] splitted = line.split("\t");
+			out.println(splitted[0]);
+		}
+		in.close();
+		out.close();
+	}
+}
@@ -1,28 +1,38 @@
 package gui;
 
-import static java.util.Collections.sort;
-
 import java.awt.Dimension;
 import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.rmi.UnexpectedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -31,36 +41,62 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JScrollBar;
 import javax.swing.JTextPane;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
-public class MainWindow {
+import sieve.Action;
+import sieve.Batch;
+import sieve.Cancellable;
+import sieve.Compression;
+import sieve.Configuration;
+import sieve.FilterSet;
+import sieve.Job;
+import sieve.LemmaMemo;
+import sieve.FrequencyList;
+import sieve.Inputs;
+import sieve.Lines;
+import sieve.Merge;
+import sieve.Metrics;
+import sieve.Pipeline;
+import sieve.Sieve;
+import sieve.TaggerCache;
+import sieve.TaggerOutput;
+import sieve.UndoHistory;
 
-	private static String OS = System.getProperty("os.name").toLowerCase();
+public class MainWindow {
 
 	private final int LINES_IN_TEXT_AREA = 11;
-	private final String CONFIGURATION_FILE_NAME = "config";
-	private final String DEFAULT_LANGUAGE = "English";
-	private final String DEFAULT_WORKING_DIRECTORY = "~";
+	private final int PROGRESS_INTERVAL = 500;
 	private final String LANGUAGES[] = { "English", "French", "German", "Italian", "Russian", "Spanish" };
-	private final String FILTER_PREFIX = "filter";
-	private final String TAGGER_PREFIX = "tagger";
-	private final String TMP_PREFIX = "tmp";
 	private final String TMP_DIR = "tmp";
-	private final String LAST_WORKING_DIRECTORY = "lastWorkingDirectory";
-	private final String LAST_USED_LANGUAGE = "lastUsedLanguage";
+	private final String METRICS_FILE = "metrics.jsonl";
+	private static final String CDS_TRAINING = "-cds-training";
+	private static final String LEMMA_RULES = "Counts the lemma column of the tagger output. A lemma the tagger"
+			+ " does not know, " + TaggerOutput.UNKNOWN + ", counts as the word, and of 'a|b' only 'a' counts.";
 
 	private File originallyLoadedFile;
 	private File currentlyProcessedFile;
 	private String lastWorkingDirectory;
 	private String language;
-	private int currentTmp;
-	private Map<String, String> filterMap;
+	private UndoHistory history;
+	private volatile boolean configurationApplied;
+	private Map<String, List<String>> filterMap;
 	private Map<String, String> taggerMap;
-	private boolean processingCancelled;
+	private Configuration configuration;
+	private volatile Job job;
+	private boolean parallelCounting;
+	private boolean incrementalCounting;
+	private boolean rememberLemmas;
+	private boolean keepIntermediateResults;
 
 	private JFrame frmWordSieve;
 	private JMenuBar menuBar;
@@ -72,7 +108,15 @@ public class MainWindow {
 	private JMenuItem mntmStripAnkiTranslations;
 	private JMenuItem mntmCountSortWithStats;
 	private JMenuItem mntmCountSortWithoutStats;
+	private JMenuItem mntmTopK;
+	private JMenuItem mntmMerge;
+	private JMenuItem mntmRunPipeline;
+	private JCheckBoxMenuItem mntmParallelCounting;
+	private JCheckBoxMenuItem mntmIncrementalCounting;
+	private JCheckBoxMenuItem mntmRememberLemmas;
+	private JCheckBoxMenuItem mntmKeepIntermediateResults;
 	private JMenuItem mntmUndo;
+	private JMenuItem mntmRedo;
 	private JMenu mnFilter;
 	private JLabel lblLanguage;
 	private JLabel lblFile;
@@ -80,38 +124,153 @@ public class MainWindow {
 	private JLabel lblSelectedFile;
 	private JTextPane txtpnPreview;
 	private JLabel lblPreview;
+	private JLabel lblPreviewPosition;
+	private JScrollBar scrbPreview;
+	private JButton btnGoToLine;
+	private Lines previewIndex;
+	private PreviewIndexer previewIndexer;
+	private PreviewPage previewPage;
+	private long requestedPreviewLine = -1;
 	private JMenuItem mntmFilter;
 	private JMenu mnTagger;
+	private JFileChooser chooser;
+	private JMenuItem mntmTaggerProcesses;
+	private JMenuItem mntmClearTaggerCache;
 	private JLabel lblTagger;
 	private JLabel lblSelectedTagger;
 	private JLabel lblFilter;
 	private JLabel lblSelectedFilter;
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
+		if (args.length == 1 && args[0].equals(CDS_TRAINING)) {
+			loadStartupClasses();
+			return;
+		}
+		if (args.length > 0 && args[0].equals("merge")) {
+			Merge.main(args);
+			return;
+		}
+		if (args.length > 0) {
+			Batch.main(args);
+			return;
+		}
+		final Future<Configuration> configuration = loadConfiguration();
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
-				MainWindow window = new MainWindow();
+				final MainWindow window = new MainWindow(configuration);
 				window.frmWordSieve.setVisible(true);
+				EventQueue.invokeLater(new Runnable() {
+					public void run() {
+						window.fileChooser();
+					}
+				});
 			}
 		});
 	}
 
-	public MainWindow() {
+	public MainWindow(Future<Configuration> configuration) {
 		try {
 			Thread hook = new Thread() {
 				public void run() {
-					saveConfiguration();
+					if (configurationApplied)
+						saveConfiguration();
+					if (history != null)
+						history.clear();
 				}
 			};
 			Runtime.getRuntime().addShutdownHook(hook);
 
 			initializeUI();
-			initializeVariables();
+			initializeVariables(configuration);
 		} catch (Exception e) {
 			JOptionPane.showMessageDialog(frmWordSieve, ExceptionUtils.getStackTrace(e));
 		}
 	}
 
+	/**
+	 * Reads the 'config' file on a thread of its own, so that reading it
+	 * overlaps with building the window.
+	 */
+	private static Future<Configuration> loadConfiguration() {
+		FutureTask<Configuration> task = new FutureTask<Configuration>(new Callable<Configuration>() {
+			public Configuration call() throws Exception {
+				Configuration configuration = new Configuration();
+				configuration.load(new File(Configuration.FILE_NAME));
+				return configuration;
+			}
+		});
+		Thread thread = new Thread(task, "config");
+		thread.setDaemon(true);
+		thread.start();
+		return task;
+	}
+
+	/**
+	 * Loads the classes starting the window takes without showing it or
+	 * touching the settings, for the run the build dumps its class data
+	 * sharing archive from. Without a display only the components of the
+	 * window are made, not the window itself.
+	 */
+	private static void loadStartupClasses() throws Exception {
+		try {
+			loadConfiguration().get();
+		} catch (ExecutionException e) {
+		}
+		EventQueue.invokeAndWait(new Runnable() {
+			public void run() {
+				JMenuBar bar = new JMenuBar();
+				JMenu menu = new JMenu();
+				bar.add(menu);
+				menu.add(new JMenuItem());
+				menu.add(new JCheckBoxMenuItem());
+				menu.add(new JRadioButtonMenuItem());
+				menu.addSeparator();
+				JPanel panel = new JPanel(null);
+				panel.add(new JLabel());
+				panel.add(new JTextPane());
+				panel.add(new JScrollBar());
+				panel.add(new JButton());
+				panel.add(new JProgressBar());
+				new JFileChooser();
+				if (!GraphicsEnvironment.isHeadless()) {
+					JFrame frame = new JFrame();
+					frame.setJMenuBar(bar);
+					frame.getContentPane().add(panel);
+					frame.pack();
+					frame.dispose();
+				}
+			}
+		});
+		File source = new File(MainWindow.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		if (source.isFile()) {
+			JarFile jar = new JarFile(source);
+			try {
+				Enumeration<JarEntry> entries = jar.entries();
+				while (entries.hasMoreElements()) {
+					String name = entries.nextElement().getName();
+					if (name.endsWith(".class"))
+						Class.forName(name.substring(0, name.length() - 6).replace('/', '.'), false,
+								MainWindow.class.getClassLoader());
+				}
+			} finally {
+				jar.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the file chooser all actions share, opened at the last working
+	 * directory. It is made once, right after the window shows, as making one
+	 * lists the home directory and loads its icons.
+	 */
+	private JFileChooser fileChooser() {
+		if (chooser == null)
+			chooser = new JFileChooser();
+		chooser.setCurrentDirectory(new File(lastWorkingDirectory));
+		chooser.setSelectedFiles(null);
+		return chooser;
+	}
+
 	private void initializeUI() {
 		frmWordSieve = new JFrame();
 		frmWordSieve.setTitle("Word Sieve");
@@ -127,15 +286,15 @@ public class MainWindow {
 		mntmLoad = new JMenuItem("Load");
 		mntmLoad.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				JFileChooser chooser = new JFileChooser(lastWorkingDirectory);
+				JFileChooser chooser = fileChooser();
 				int ret = chooser.showOpenDialog(frmWordSieve);
 				if (ret == JFileChooser.APPROVE_OPTION) {
 					currentlyProcessedFile = chooser.getSelectedFile();
 					originallyLoadedFile = currentlyProcessedFile;
 					lastWorkingDirectory = currentlyProcessedFile.getParentFile().getAbsolutePath();
 					lblSelectedFile.setText(currentlyProcessedFile.getName());
-					currentTmp = -1;
-					mntmUndo.setEnabled(false);
+					history.reset(originallyLoadedFile);
+					updateUndoRedo();
 					loadFileContentToPreview();
 				}
 			}
@@ -145,12 +304,12 @@ public class MainWindow {
 		mntmSaveAs = new JMenuItem("Save As");
 		mntmSaveAs.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				JFileChooser chooser = new JFileChooser(lastWorkingDirectory);
+				JFileChooser chooser = fileChooser();
 				int ret = chooser.showSaveDialog(frmWordSieve);
 				if (ret == JFileChooser.APPROVE_OPTION) {
 					final File selected = chooser.getSelectedFile();
 					lastWorkingDirectory = selected.getParentFile().getAbsolutePath();
-					final JDialog dialog = constructDialog("Saving...");
+					final JDialog dialog = constructDialog("Saving...", "save");
 					new SwingWorker<Void, Void>() {
 						protected void done() {
 							dialog.dispose();
@@ -186,7 +345,7 @@ public class MainWindow {
 		mntmStripAnkiTranslations = new JMenuItem("Strip Anki translations");
 		mntmStripAnkiTranslations.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				final JDialog dialog = constructDialog("Computing...");
+				final JDialog dialog = constructDialog("Computing...", "strip");
 				new SwingWorker<Void, Void>() {
 					protected void done() {
 						dialog.dispose();
@@ -205,45 +364,140 @@ public class MainWindow {
 		mntmCountSortWithStats = new JMenuItem("Count&Sort with stats");
 		mntmCountSortWithStats.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				final JDialog dialog = constructDialog("Computing...");
+				final JDialog dialog = constructDialog("Computing...", "count-stats");
 				new SwingWorker<Void, Void>() {
 					protected void done() {
 						dialog.dispose();
 					}
 
 					protected Void doInBackground() throws Exception {
-						countSortWithStats();
+						countSort(true);
 						return null;
 					}
 				}.execute();
 				dialog.setVisible(true);
 			}
 		});
+		mntmCountSortWithStats.setToolTipText(LEMMA_RULES);
 		mnAction.add(mntmCountSortWithStats);
 
 		mntmCountSortWithoutStats = new JMenuItem("Count&Sort without stats");
 		mntmCountSortWithoutStats.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				final JDialog dialog = constructDialog("Computing...");
+				final JDialog dialog = constructDialog("Computing...", "count");
 				new SwingWorker<Void, Void>() {
 					protected void done() {
 						dialog.dispose();
 					}
 
 					protected Void doInBackground() throws Exception {
-						countSortWithoutStats();
+						countSort(false);
 						return null;
 					}
 				}.execute();
 				dialog.setVisible(true);
 			}
 		});
+		mntmCountSortWithoutStats.setToolTipText(LEMMA_RULES);
 		mnAction.add(mntmCountSortWithoutStats);
 
+		mntmTopK = new JMenuItem("Approximate top-K");
+		mntmTopK.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				String k = (String) JOptionPane.showInputDialog(frmWordSieve, "Number of most frequent words:",
+						"Approximate top-K", JOptionPane.PLAIN_MESSAGE, null, null, configuration.getTopK());
+				if (k == null)
+					return;
+				try {
+					configuration.setTopK(Integer.parseInt(k.trim()));
+				} catch (NumberFormatException ex) {
+					JOptionPane.showMessageDialog(frmWordSieve, "'" + k + "' is not a number");
+					return;
+				}
+				final JDialog dialog = constructDialog("Computing...", "top-k");
+				new SwingWorker<Void, Void>() {
+					protected void done() {
+						dialog.dispose();
+					}
+
+					protected Void doInBackground() throws Exception {
+						countTopK();
+						return null;
+					}
+				}.execute();
+				dialog.setVisible(true);
+			}
+		});
+		mntmTopK.setToolTipText(LEMMA_RULES);
+		mnAction.add(mntmTopK);
+
+		mntmMerge = new JMenuItem("Merge with other rankings");
+		mntmMerge.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (currentlyProcessedFile == null) {
+					JOptionPane.showMessageDialog(frmWordSieve, "Load a ranking to merge the others with first!");
+					return;
+				}
+				JFileChooser chooser = fileChooser();
+				chooser.setMultiSelectionEnabled(true);
+				int ret = chooser.showOpenDialog(frmWordSieve);
+				chooser.setMultiSelectionEnabled(false);
+				if (ret != JFileChooser.APPROVE_OPTION)
+					return;
+				final File[] rankings = chooser.getSelectedFiles();
+				lastWorkingDirectory = rankings[0].getParentFile().getAbsolutePath();
+				final JDialog dialog = constructDialog("Merging...", "merge");
+				new SwingWorker<Void, Void>() {
+					protected void done() {
+						dialog.dispose();
+					}
+
+					protected Void doInBackground() throws Exception {
+						merge(rankings);
+						return null;
+					}
+				}.execute();
+				dialog.setVisible(true);
+			}
+		});
+		mnAction.add(mntmMerge);
+
+		mntmParallelCounting = new JCheckBoxMenuItem("Parallel counting");
+		mntmParallelCounting.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				parallelCounting = mntmParallelCounting.isSelected();
+			}
+		});
+		mnAction.add(mntmParallelCounting);
+
+		mntmIncrementalCounting = new JCheckBoxMenuItem("Incremental counting");
+		mntmIncrementalCounting.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				incrementalCounting = mntmIncrementalCounting.isSelected();
+			}
+		});
+		mnAction.add(mntmIncrementalCounting);
+
+		mntmRememberLemmas = new JCheckBoxMenuItem("Remember lemmas");
+		mntmRememberLemmas.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				rememberLemmas = mntmRememberLemmas.isSelected();
+			}
+		});
+		mnAction.add(mntmRememberLemmas);
+
+		mntmKeepIntermediateResults = new JCheckBoxMenuItem("Keep intermediate results");
+		mntmKeepIntermediateResults.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				keepIntermediateResults = mntmKeepIntermediateResults.isSelected();
+			}
+		});
+		mnAction.add(mntmKeepIntermediateResults);
+
 		mntmFilter = new JMenuItem("Filter");
 		mntmFilter.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				final JDialog dialog = constructDialog("Computing...");
+				final JDialog dialog = constructDialog("Computing...", "filter");
 				new SwingWorker<Void, Void>() {
 					protected void done() {
 						dialog.dispose();
@@ -259,61 +513,90 @@ public class MainWindow {
 		});
 		mnAction.add(mntmFilter);
 
+		mntmRunPipeline = new JMenuItem("Run pipeline");
+		mntmRunPipeline.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				final String spec = (String) JOptionPane.showInputDialog(frmWordSieve,
+						"Actions to run (strip, count-stats, count, top-k, filter):", "Run pipeline",
+						JOptionPane.PLAIN_MESSAGE, null, null, configuration.getLastPipeline());
+				if (spec == null)
+					return;
+				configuration.setLastPipeline(spec);
+				final JDialog dialog = constructDialog("Computing...", spec);
+				new SwingWorker<Void, Void>() {
+					protected void done() {
+						dialog.dispose();
+					}
+
+					protected Void doInBackground() throws Exception {
+						runPipeline(spec);
+						return null;
+					}
+				}.execute();
+				dialog.setVisible(true);
+			}
+		});
+		mnAction.add(mntmRunPipeline);
+
 		mntmUndo = new JMenuItem("Undo last action");
 		mntmUndo.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
-				currentTmp--;
-				if (currentTmp >= 0) {
-					currentlyProcessedFile = new File(TMP_DIR + "/" + TMP_PREFIX + currentTmp);
-				} else {
-					currentlyProcessedFile = originallyLoadedFile;
-					mntmUndo.setEnabled(false);
+				try {
+					currentlyProcessedFile = history.undo();
+				} catch (IOException ex) {
+					JOptionPane.showMessageDialog(frmWordSieve, ex.getMessage());
 				}
+				updateUndoRedo();
 				loadFileContentToPreview();
 			}
 		});
 		mntmUndo.setEnabled(false);
 		mnAction.add(mntmUndo);
 
+		mntmRedo = new JMenuItem("Redo last action");
+		mntmRedo.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent arg0) {
+				try {
+					currentlyProcessedFile = history.redo();
+				} catch (IOException ex) {
+					JOptionPane.showMessageDialog(frmWordSieve, ex.getMessage());
+				}
+				updateUndoRedo();
+				loadFileContentToPreview();
+			}
+		});
+		mntmRedo.setEnabled(false);
+		mnAction.add(mntmRedo);
+
 		mnFilter = new JMenu("Filter");
-		menuBar.add(mnFilter);
+		mnFilter.addMenuListener(new MenuListener() {
+			public void menuSelected(MenuEvent e) {
+				if (mnFilter.getItemCount() == 0)
+					buildFilterMenu();
+			}
 
-		for (String s : LANGUAGES) {
-			final JMenuItem item = new JMenuItem(s);
-			item.addActionListener(new ActionListener() {
-				public void actionPerformed(ActionEvent e) {
-					JFileChooser chooser = new JFileChooser(lastWorkingDirectory);
-					int ret = chooser.showOpenDialog(frmWordSieve);
-					if (ret == JFileChooser.APPROVE_OPTION) {
-						File selected = chooser.getSelectedFile();
-						filterMap.put(item.getText(), selected.getAbsolutePath());
-						lastWorkingDirectory = selected.getParentFile().getAbsolutePath();
-						lblSelectedFilter.setText(selected.getName());
-					}
-				}
-			});
-			mnFilter.add(item);
-		}
+			public void menuDeselected(MenuEvent e) {
+			}
+
+			public void menuCanceled(MenuEvent e) {
+			}
+		});
+		menuBar.add(mnFilter);
 
 		mnTagger = new JMenu("Tagger");
-		menuBar.add(mnTagger);
+		mnTagger.addMenuListener(new MenuListener() {
+			public void menuSelected(MenuEvent e) {
+				if (mnTagger.getItemCount() == 0)
+					buildTaggerMenu();
+			}
 
-		for (String s : LANGUAGES) {
-			final JMenuItem item = new JMenuItem(s);
-			item.addActionListener(new ActionListener() {
-				public void actionPerformed(ActionEvent e) {
-					JFileChooser chooser = new JFileChooser(lastWorkingDirectory);
-					int ret = chooser.showOpenDialog(frmWordSieve);
-					if (ret == JFileChooser.APPROVE_OPTION) {
-						File selected = chooser.getSelectedFile();
-						taggerMap.put(item.getText(), selected.getAbsolutePath());
-						lastWorkingDirectory = selected.getParentFile().getAbsolutePath();
-						lblSelectedTagger.setText(selected.getName());
-					}
-				}
-			});
-			mnTagger.add(item);
-		}
+			public void menuDeselected(MenuEvent e) {
+			}
+
+			public void menuCanceled(MenuEvent e) {
+			}
+		});
+		menuBar.add(mnTagger);
 
 		frmWordSieve.getContentPane().setLayout(null);
 
@@ -335,13 +618,50 @@ public class MainWindow {
 
 		txtpnPreview = new JTextPane();
 		txtpnPreview.setEditable(false);
-		txtpnPreview.setBounds(12, 147, 501, 171);
+		txtpnPreview.setBounds(12, 147, 485, 171);
+		txtpnPreview.addMouseWheelListener(new MouseWheelListener() {
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				scrbPreview.setValue(scrbPreview.getValue() + 3 * e.getWheelRotation());
+			}
+		});
 		frmWordSieve.getContentPane().add(txtpnPreview);
 
+		scrbPreview = new JScrollBar(JScrollBar.VERTICAL);
+		scrbPreview.setBounds(497, 147, 16, 171);
+		scrbPreview.setEnabled(false);
+		scrbPreview.addAdjustmentListener(new AdjustmentListener() {
+			public void adjustmentValueChanged(AdjustmentEvent e) {
+				if (previewIndex != null)
+					showPreviewAt(e.getValue());
+			}
+		});
+		frmWordSieve.getContentPane().add(scrbPreview);
+
 		lblPreview = new JLabel("Preview:");
 		lblPreview.setBounds(12, 120, 80, 15);
 		frmWordSieve.getContentPane().add(lblPreview);
 
+		lblPreviewPosition = new JLabel("");
+		lblPreviewPosition.setBounds(94, 120, 300, 15);
+		frmWordSieve.getContentPane().add(lblPreviewPosition);
+
+		btnGoToLine = new JButton("Go to line");
+		btnGoToLine.setBounds(403, 116, 110, 23);
+		btnGoToLine.setEnabled(false);
+		btnGoToLine.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				String value = JOptionPane.showInputDialog(frmWordSieve, "Line (or rank in a ranked list):");
+				if (value == null)
+					return;
+				try {
+					scrbPreview.setValue((int) Math.min(Long.parseLong(value.trim()) - 1, Integer.MAX_VALUE));
+				} catch (NumberFormatException ex) {
+					JOptionPane.showMessageDialog(frmWordSieve, "'" + value + "' is not a line number");
+				}
+			}
+		});
+		frmWordSieve.getContentPane().add(btnGoToLine);
+
 		lblTagger = new JLabel("Tagger:");
 		lblTagger.setBounds(12, 66, 80, 15);
 		frmWordSieve.getContentPane().add(lblTagger);
@@ -359,55 +679,207 @@ public class MainWindow {
 		frmWordSieve.getContentPane().add(lblSelectedFilter);
 	}
 
-	private void initializeVariables() throws Exception {
-		filterMap = new HashMap<String, String>();
-		taggerMap = new HashMap<String, String>();
-		currentlyProcessedFile = null;
-		lastWorkingDirectory = DEFAULT_WORKING_DIRECTORY;
-		String tmpLanguage = DEFAULT_LANGUAGE;
-		try {
-			BufferedReader in = new BufferedReader(new InputStreamReader(new DataInputStream(new FileInputStream(
-					CONFIGURATION_FILE_NAME))));
-			String line;
+	/**
+	 * Fills the Filter menu the first time it is opened.
+	 */
+	private void buildFilterMenu() {
+		for (final String s : LANGUAGES) {
+			JMenu menu = new JMenu(s);
+			JMenuItem addItem = new JMenuItem("Add filter file");
+			addItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					JFileChooser chooser = fileChooser();
+					int ret = chooser.showOpenDialog(frmWordSieve);
+					if (ret == JFileChooser.APPROVE_OPTION) {
+						File selected = chooser.getSelectedFile();
+						if (!filterMap.containsKey(s))
+							filterMap.put(s, new ArrayList<String>());
+						if (!filterMap.get(s).contains(selected.getAbsolutePath()))
+							filterMap.get(s).add(selected.getAbsolutePath());
+						lastWorkingDirectory = selected.getParentFile().getAbsolutePath();
+						if (s.equals(language))
+							lblSelectedFilter.setText(getFilterNames(s));
+					}
+				}
+			});
+			menu.add(addItem);
+			JMenuItem clearItem = new JMenuItem("Clear filter files");
+			clearItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					filterMap.remove(s);
+					if (s.equals(language))
+						lblSelectedFilter.setText("");
+				}
+			});
+			menu.add(clearItem);
+			mnFilter.add(menu);
+		}
+	}
 
-			while ((line = in.readLine()) != null) {
-				String chunk[] = line.split("=");
-				if (chunk.length != 2) {
-					System.out.println("zle sformatowane");
-					continue;
+	/**
+	 * Fills the Tagger menu the first time it is opened.
+	 */
+	private void buildTaggerMenu() {
+		for (String s : LANGUAGES) {
+			final JMenuItem item = new JMenuItem(s);
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					JFileChooser chooser = fileChooser();
+					int ret = chooser.showOpenDialog(frmWordSieve);
+					if (ret == JFileChooser.APPROVE_OPTION) {
+						File selected = chooser.getSelectedFile();
+						taggerMap.put(item.getText(), selected.getAbsolutePath());
+						lastWorkingDirectory = selected.getParentFile().getAbsolutePath();
+						lblSelectedTagger.setText(selected.getName());
+					}
 				}
-				if (chunk[0].equals(LAST_WORKING_DIRECTORY))
-					lastWorkingDirectory = chunk[1];
-				else if (chunk[0].equals(LAST_USED_LANGUAGE))
-					tmpLanguage = chunk[1];
-				else if (chunk[0].startsWith(FILTER_PREFIX))
-					filterMap.put(chunk[0].substring(FILTER_PREFIX.length()), chunk[1]);
-				else if (chunk[0].startsWith(TAGGER_PREFIX))
-					taggerMap.put(chunk[0].substring(TAGGER_PREFIX.length()), chunk[1]);
-			}
-			switchLanguageTo(tmpLanguage);
-			in.close();
-		} catch (Exception e) {
+			});
+			mnTagger.add(item);
+		}
+
+		mnTagger.addSeparator();
+		mntmTaggerProcesses = new JMenuItem("Tagger processes");
+		mntmTaggerProcesses.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				String value = (String) JOptionPane.showInputDialog(frmWordSieve,
+						"Number of tagger processes working in parallel:", "Tagger processes",
+						JOptionPane.PLAIN_MESSAGE, null, null, String.valueOf(configuration.getTaggerProcesses()));
+				if (value == null)
+					return;
+				try {
+					int processes = Integer.parseInt(value.trim());
+					if (processes < 1)
+						throw new NumberFormatException();
+					configuration.setTaggerProcesses(processes);
+				} catch (NumberFormatException ex) {
+					JOptionPane.showMessageDialog(frmWordSieve, "'" + value + "' is not a positive number");
+				}
+			}
+		});
+		mnTagger.add(mntmTaggerProcesses);
+
+		mntmClearTaggerCache = new JMenuItem("Clear tagger cache");
+		mntmClearTaggerCache.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				new TaggerCache(new File(Configuration.TAGGER_CACHE_DIR), 0).clear();
+			}
+		});
+		mnTagger.add(mntmClearTaggerCache);
+	}
+
+	/**
+	 * Starts with the default settings and applies those of the 'config' file
+	 * once it has been read, without making the event dispatch thread wait
+	 * for it.
+	 */
+	private void initializeVariables(final Future<Configuration> loaded) {
+		configuration = new Configuration();
+		filterMap = configuration.getFilterMap();
+		taggerMap = configuration.getTaggerMap();
+		currentlyProcessedFile = null;
+		lastWorkingDirectory = Configuration.DEFAULT_WORKING_DIRECTORY;
+		history = configuration.getUndoHistory(new File(TMP_DIR));
+		Thread thread = new Thread("config-apply") {
+			public void run() {
+				try {
+					final Configuration loadedConfiguration = loaded.get();
+					EventQueue.invokeLater(new Runnable() {
+						public void run() {
+							applyConfiguration(loadedConfiguration);
+						}
+					});
+				} catch (final Exception e) {
+					EventQueue.invokeLater(new Runnable() {
+						public void run() {
+							reportConfigurationError(e instanceof ExecutionException ? e.getCause() : e);
+						}
+					});
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void applyConfiguration(Configuration loaded) {
+		configuration = loaded;
+		filterMap = configuration.getFilterMap();
+		taggerMap = configuration.getTaggerMap();
+		if (currentlyProcessedFile == null)
+			history = configuration.getUndoHistory(new File(TMP_DIR));
+		lastWorkingDirectory = configuration.getLastWorkingDirectory();
+		parallelCounting = configuration.isParallelCounting();
+		incrementalCounting = configuration.isIncrementalCounting();
+		rememberLemmas = configuration.isLemmaMemo();
+		keepIntermediateResults = configuration.isKeepIntermediateResults();
+		switchLanguageTo(configuration.getLanguage());
+		mntmParallelCounting.setSelected(parallelCounting);
+		mntmIncrementalCounting.setSelected(incrementalCounting);
+		mntmRememberLemmas.setSelected(rememberLemmas);
+		mntmKeepIntermediateResults.setSelected(keepIntermediateResults);
+		configurationApplied = true;
+		if (!configuration.getMalformedLines().isEmpty()) {
+			StringBuilder message = new StringBuilder("Ignoring malformed settings in 'config' file:");
+			for (String line : configuration.getMalformedLines())
+				message.append('\n').append(line);
+			JOptionPane.showMessageDialog(frmWordSieve, message.toString());
+		}
+	}
+
+	/**
+	 * Tells why the settings could not be read. A missing file is written with
+	 * the settings on exit; one that could not be read is left alone.
+	 */
+	private void reportConfigurationError(Throwable e) {
+		if (e instanceof FileNotFoundException) {
+			configurationApplied = true;
 			JOptionPane.showMessageDialog(frmWordSieve, "Could not find 'config' file. Running with default settings.");
+		} else {
+			JOptionPane.showMessageDialog(frmWordSieve, "Could not read 'config' file: " + e.getMessage()
+					+ "\nRunning with default settings.");
 		}
 	}
 
 	private void loadFileContentToPreview() {
+		if (previewIndexer != null)
+			previewIndexer.cancel(false);
+		previewIndex = null;
+		requestedPreviewLine = -1;
+		scrbPreview.setEnabled(false);
+		btnGoToLine.setEnabled(false);
 		try {
-			BufferedReader in = new BufferedReader(new InputStreamReader(new DataInputStream(new FileInputStream(
-					currentlyProcessedFile))));
+			BufferedReader in = Inputs.openReader(currentlyProcessedFile);
 			String line;
-			String buffer = "";
+			StringBuilder buffer = new StringBuilder();
 			for (int i = 0; i < LINES_IN_TEXT_AREA; i++) {
 				if ((line = in.readLine()) == null)
 					break;
-				buffer = buffer + line + "\n";
+				buffer.append(line).append('\n');
 			}
-			txtpnPreview.setText(buffer);
+			in.close();
+			txtpnPreview.setText(buffer.toString());
+			txtpnPreview.setCaretPosition(0);
 		} catch (Exception e) {
 			JOptionPane.showMessageDialog(frmWordSieve, "Error loading preview: " + e.getMessage());
 			throw new RuntimeException(e);
 		}
+		lblPreviewPosition.setText("Indexing...");
+		previewIndexer = new PreviewIndexer(currentlyProcessedFile);
+		previewIndexer.execute();
+	}
+
+	/**
+	 * Shows the page of the preview starting at the line, read in the
+	 * background. While a page is being read only the last line asked for is
+	 * kept, and its page is read next.
+	 */
+	private void showPreviewAt(long firstLine) {
+		if (previewPage != null) {
+			requestedPreviewLine = firstLine;
+			return;
+		}
+		previewPage = new PreviewPage(previewIndex, firstLine);
+		previewPage.execute();
 	}
 
 	private void switchLanguageTo(String l) {
@@ -415,28 +887,34 @@ public class MainWindow {
 		for (int i = 0; i < mnLanguage.getItemCount(); i++)
 			mnLanguage.getItem(i).setSelected(mnLanguage.getItem(i).getText().equals(l));
 		lblSelectedLanguage.setText(l);
-		if (filterMap.get(l) != null)
-			lblSelectedFilter.setText(new File(filterMap.get(l)).getName());
-		else
-			lblSelectedFilter.setText("");
+		lblSelectedFilter.setText(getFilterNames(l));
 		if (taggerMap.get(l) != null)
 			lblSelectedTagger.setText(new File(taggerMap.get(l)).getName());
 		else
 			lblSelectedTagger.setText("");
 	}
 
+	private String getFilterNames(String l) {
+		StringBuilder names = new StringBuilder();
+		if (filterMap.get(l) != null) {
+			for (String path : filterMap.get(l)) {
+				if (names.length() > 0)
+					names.append(", ");
+				names.append(new File(path).getName());
+			}
+		}
+		return names.toString();
+	}
+
 	private void saveConfiguration() {
 		try {
-			PrintWriter out = new PrintWriter(new FileWriter(CONFIGURATION_FILE_NAME));
-
-			out.println(LAST_WORKING_DIRECTORY + "=" + lastWorkingDirectory);
-			out.println(LAST_USED_LANGUAGE + "=" + language);
-			for (Map.Entry<String, String> entry : filterMap.entrySet())
-				out.println(FILTER_PREFIX + entry.getKey() + "=" + entry.getValue());
-			for (Map.Entry<String, String> entry : taggerMap.entrySet())
-				out.println(TAGGER_PREFIX + entry.getKey() + "=" + entry.getValue());
-
-			out.close();
+			configuration.setLastWorkingDirectory(lastWorkingDirectory);
+			configuration.setLanguage(language);
+			configuration.setParallelCounting(parallelCounting);
+			configuration.setIncrementalCounting(incrementalCounting);
+			configuration.setLemmaMemo(rememberLemmas);
+			configuration.setKeepIntermediateResults(keepIntermediateResults);
+			configuration.save(new File(Configuration.FILE_NAME));
 		} catch (Exception ex) {
 			JOptionPane.showMessageDialog(frmWordSieve, ex.getMessage());
 			throw new RuntimeException(ex);
@@ -444,67 +922,80 @@ public class MainWindow {
 	}
 
 	private void stripAnkiTranslations() throws Exception {
+		Job job = this.job;
+		File result = null;
 		try {
-			currentTmp++;
-			BufferedReader in = new BufferedReader(new InputStreamReader(new DataInputStream(new FileInputStream(
-					currentlyProcessedFile))));
-			PrintWriter out = new PrintWriter(new FileWriter(TMP_DIR + "/" + TMP_PREFIX + currentTmp));
-			String line;
-
-			while ((line = in.readLine()) != null && !processingCancelled) {
-				String[] splitted = line.split("\t");
-				String s = splitted[0];
-				out.println(s);
-			}
-			in.close();
-			out.close();
-
-			if (processingCancelled) {
-				currentTmp--;
-			} else {
-				currentlyProcessedFile = new File(TMP_DIR + "/" + TMP_PREFIX + currentTmp);
-				loadFileContentToPreview();
-				mntmUndo.setEnabled(true);
-			}
+			result = nextTmpFile();
+			Sieve.stripAnkiTranslations(currentlyProcessedFile, result, job);
+			finishAction(job, result);
 		} catch (Exception ex) {
-			JOptionPane.showMessageDialog(frmWordSieve, ex.getMessage());
-			throw ex;
+			failAction(job, ex, result);
 		}
 	}
 
-	private JDialog constructDialog(String message) {
-		processingCancelled = false;
+	private JDialog constructDialog(String message, String jobName) {
+		final Job dialogJob = new Job(jobName);
+		job = dialogJob;
 		final JDialog dialog = new JDialog(frmWordSieve, true);
 		dialog.setLocationRelativeTo(frmWordSieve);
-		dialog.setMinimumSize(new Dimension(200, 70));
-		dialog.getContentPane().setLayout(new GridLayout(2, 1));
+		dialog.setMinimumSize(new Dimension(280, 130));
+		dialog.getContentPane().setLayout(new GridLayout(4, 1));
 		dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
 		JLabel label = new JLabel(message);
+		final JProgressBar progressBar = new JProgressBar(0, 1000);
+		final JLabel lblThroughput = new JLabel(" ");
 		JButton button = new JButton("Cancel");
 		button.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				processingCancelled = true;
+				dialogJob.cancel();
 				dialog.dispose();
 			}
 		});
+		final Timer timer = new Timer(PROGRESS_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				Metrics metrics = dialogJob.getMetrics();
+				double progress = metrics.getProgress();
+				progressBar.setIndeterminate(progress < 0);
+				if (progress >= 0)
+					progressBar.setValue((int) (progress * 1000));
+				String status = String.format("%,d lines/s", (long) metrics.getLinesPerSecond());
+				long eta = metrics.getEtaSeconds();
+				if (eta >= 0)
+					status += String.format(", %d:%02d left", eta / 60, eta % 60);
+				lblThroughput.setText(status);
+			}
+		});
+		dialog.addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				timer.stop();
+			}
+		});
+		timer.start();
 		dialog.getContentPane().add(label);
+		dialog.getContentPane().add(progressBar);
+		dialog.getContentPane().add(lblThroughput);
 		dialog.getContentPane().add(button);
 		return dialog;
 	}
 
 	private void saveResultsToFile(File file) throws Exception {
+		Job job = this.job;
 		try {
-			BufferedReader in = new BufferedReader(new InputStreamReader(new DataInputStream(new FileInputStream(
-					currentlyProcessedFile))));
-			PrintWriter out = new PrintWriter(new FileWriter(file));
+			if (file.getName().endsWith(FrequencyList.SUFFIX)
+					&& FrequencyList.isFrequencyList(currentlyProcessedFile)) {
+				Files.copy(currentlyProcessedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				return;
+			}
+			BufferedReader in = Inputs.openReader(currentlyProcessedFile, job.getMetrics());
+			PrintWriter out = Compression.writer(file);
 			String line;
 
-			while ((line = in.readLine()) != null && !processingCancelled) {
+			while ((line = in.readLine()) != null && !job.isCancelled()) {
 				out.println(line);
 			}
 			in.close();
 			out.close();
-			if (processingCancelled) {
+			if (job.isCancelled()) {
 				file.delete();
 			}
 		} catch (Exception ex) {
@@ -513,112 +1004,115 @@ public class MainWindow {
 		}
 	}
 
-	private Process executeTagger() throws IOException {
-		if (language == null) {
-			JOptionPane.showMessageDialog(frmWordSieve, "Choose the appropriate language!");
-			throw new AssertionError("Language not selected");
-		}
-		if (isUnix()) {
-			return Runtime.getRuntime().exec(taggerMap.get(language) + " " + currentlyProcessedFile.getAbsolutePath());
-		} else if (isWindows()) {
-			return Runtime.getRuntime().exec(
-					"cmd.exe /c tag-" + language.toLowerCase() + " " + currentlyProcessedFile.getAbsolutePath());
+	private File nextTmpFile() throws IOException {
+		return history.newFile();
+	}
+
+	private File nextTmpFile(String suffix) throws IOException {
+		return history.newFile(suffix);
+	}
+
+	private void finishAction(Job job, File... results) throws IOException {
+		job.getMetrics().finish();
+		job.getMetrics().appendTo(new File(METRICS_FILE));
+		if (job.isCancelled()) {
+			for (File result : results)
+				result.delete();
 		} else {
-			throw new UnexpectedException("Could not recognize the operating system");
+			for (File result : results)
+				history.push(result);
+			currentlyProcessedFile = history.current();
+			loadFileContentToPreview();
+			updateUndoRedo();
 		}
 	}
 
-	private PrintWriter getWriterToTmp(String path) throws IOException {
-		File f = new File(TMP_DIR);
-		if (!f.isDirectory()) {
-			if (f.exists()) {
-				throw new IOException("'" + TMP_DIR + "' directory is needed but such file exists");
-			} else {
-				f.mkdirs();
-			}
-		}
-		return new PrintWriter(new FileWriter(path));
+	/**
+	 * Deletes the partial results of an action that failed or was cancelled;
+	 * errors of cancelled actions are expected and not reported.
+	 */
+	private void failAction(Job job, Exception ex, File... results) throws Exception {
+		for (File result : results)
+			if (result != null)
+				result.delete();
+		if (job.isCancelled())
+			return;
+		JOptionPane.showMessageDialog(frmWordSieve, ex.getMessage());
+		throw ex;
 	}
 
-	private void countSortWithStats() throws Exception {
+	private void updateUndoRedo() {
+		mntmUndo.setEnabled(history.canUndo());
+		mntmRedo.setEnabled(history.canRedo());
+	}
+
+	private void countSort(boolean withStats) throws Exception {
 		if (currentlyProcessedFile.getAbsolutePath().contains(" ")) {
 			JOptionPane.showMessageDialog(frmWordSieve, "Cannot process files that have spaces in their path");
 			return;
 		}
+		if (language == null) {
+			JOptionPane.showMessageDialog(frmWordSieve, "Choose the appropriate language!");
+			throw new AssertionError("Language not selected");
+		}
+		Job job = this.job;
+		File result = null;
 		try {
-			currentTmp++;
-			Process p = executeTagger();
-			BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			PrintWriter out = getWriterToTmp(TMP_DIR + "/" + TMP_PREFIX + currentTmp);
-			String line;
-			List<Stat> list = new ArrayList<Stat>();
-
-			while ((line = in.readLine()) != null && !processingCancelled) {
-				String[] splitted = line.split("\t");
-				String s = splitted[splitted.length - 1];
-				addWordToList(s, list);
-			}
-			p.waitFor();
-
-			sort(list, new MyComparator());
-
-			int i = 1;
-			for (Stat s : list) {
-				out.println((i++) + " " + s.word + " " + s.occurrences);
-			}
-			in.close();
-			out.close();
-
-			if (processingCancelled) {
-				currentTmp--;
-			} else {
-				currentlyProcessedFile = new File(TMP_DIR + "/" + TMP_PREFIX + currentTmp);
-				loadFileContentToPreview();
-				mntmUndo.setEnabled(true);
-			}
+			result = nextTmpFile(FrequencyList.SUFFIX);
+			LemmaMemo memo = rememberLemmas ? configuration.getLemmaMemo(language) : null;
+			if (incrementalCounting && currentlyProcessedFile.equals(originallyLoadedFile))
+				Sieve.countSortIncremental(currentlyProcessedFile, result, withStats,
+						configuration.getTagger(language), configuration.getTaggerCache(), memo, parallelCounting, job);
+			else
+				Sieve.countSort(currentlyProcessedFile, result, withStats, configuration.getTagger(language),
+						configuration.getTaggerCache(), memo, parallelCounting, configuration.getCountingMemoryBudget(),
+						job);
+			finishAction(job, result);
 		} catch (Exception ex) {
-			throw ex;
+			failAction(job, ex, result);
 		}
 	}
 
-	private void countSortWithoutStats() throws Exception {
+	private void countTopK() throws Exception {
 		if (currentlyProcessedFile.getAbsolutePath().contains(" ")) {
 			JOptionPane.showMessageDialog(frmWordSieve, "Cannot process files that have spaces in their path");
 			return;
 		}
+		if (language == null) {
+			JOptionPane.showMessageDialog(frmWordSieve, "Choose the appropriate language!");
+			throw new AssertionError("Language not selected");
+		}
+		Job job = this.job;
+		File result = null;
 		try {
-			currentTmp++;
-			Process p = executeTagger();
-			BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			PrintWriter out = getWriterToTmp(TMP_DIR + "/" + TMP_PREFIX + currentTmp);
-			String line;
-			List<Stat> list = new ArrayList<Stat>();
-
-			while ((line = in.readLine()) != null && !processingCancelled) {
-				String[] splitted = line.split("\t");
-				String s = splitted[splitted.length - 1];
-				addWordToList(s, list);
-			}
-			p.waitFor();
-
-			sort(list, new MyComparator());
-
-			for (Stat s : list) {
-				out.println(s.word);
-			}
-			in.close();
-			out.close();
+			result = nextTmpFile();
+			Sieve.countTopK(currentlyProcessedFile, result, configuration.getTagger(language),
+					configuration.getTaggerCache(), rememberLemmas ? configuration.getLemmaMemo(language) : null,
+					configuration.getTopKCounter(), job);
+			finishAction(job, result);
+		} catch (Exception ex) {
+			failAction(job, ex, result);
+		}
+	}
 
-			if (processingCancelled) {
-				currentTmp--;
-			} else {
-				currentlyProcessedFile = new File(TMP_DIR + "/" + TMP_PREFIX + currentTmp);
-				loadFileContentToPreview();
-				mntmUndo.setEnabled(true);
-			}
+	/**
+	 * Merges the loaded ranking with the chosen ones into a ranking of all
+	 * their counts.
+	 */
+	private void merge(File[] rankings) throws Exception {
+		Job job = this.job;
+		File result = null;
+		try {
+			result = nextTmpFile(FrequencyList.SUFFIX);
+			List<File> inputs = new ArrayList<File>();
+			inputs.add(currentlyProcessedFile);
+			for (File ranking : rankings)
+				if (!ranking.equals(currentlyProcessedFile))
+					inputs.add(ranking);
+			Sieve.merge(inputs, result, configuration.getCountingMemoryBudget(), job);
+			finishAction(job, result);
 		} catch (Exception ex) {
-			JOptionPane.showMessageDialog(frmWordSieve, ex.getMessage());
-			throw ex;
+			failAction(job, ex, result);
 		}
 	}
 
@@ -627,89 +1121,116 @@ public class MainWindow {
 			JOptionPane.showMessageDialog(frmWordSieve, "Choose the appropriate language!");
 			throw new AssertionError("Language not selected");
 		}
-		if (!filterMap.containsKey(language)) {
+		if (!filterMap.containsKey(language) || filterMap.get(language).isEmpty()) {
 			JOptionPane.showMessageDialog(frmWordSieve, "No filter file was specified for this language!");
 			throw new AssertionError("Filter file not specified");
 		}
+		Job job = this.job;
+		File result = null;
 		try {
-			currentTmp++;
-			BufferedReader in = new BufferedReader(new InputStreamReader(new DataInputStream(new FileInputStream(
-					currentlyProcessedFile))));
-			BufferedReader inFilter = new BufferedReader(new InputStreamReader(new DataInputStream(new FileInputStream(
-					filterMap.get(language)))));
-			PrintWriter out = new PrintWriter(new FileWriter(TMP_DIR + "/" + TMP_PREFIX + currentTmp));
-			String line;
-			List<String> filterList = new ArrayList<String>();
-
-			while ((line = inFilter.readLine()) != null && !processingCancelled) {
-				filterList.add(line);
-			}
-
-			while ((line = in.readLine()) != null && !processingCancelled) {
-				String[] splitted = line.split(" ");
-				String s;
-				if (splitted.length == 1)
-					s = splitted[0];
-				else if (splitted.length == 3)
-					s = splitted[1];
-				else
-					continue;
-				if (filterList.contains(s))
-					continue;
-				out.println(line);
-			}
-			in.close();
-			inFilter.close();
-			out.close();
-
-			if (processingCancelled) {
-				currentTmp--;
-			} else {
-				currentlyProcessedFile = new File(TMP_DIR + "/" + TMP_PREFIX + currentTmp);
-				loadFileContentToPreview();
-				mntmUndo.setEnabled(true);
-			}
+			result = nextTmpFile();
+			Sieve.filter(currentlyProcessedFile, result, FilterSet.load(filterMap.get(language)), job);
+			finishAction(job, result);
 		} catch (Exception ex) {
-			JOptionPane.showMessageDialog(frmWordSieve, ex.getMessage());
-			throw ex;
+			failAction(job, ex, result);
 		}
 	}
 
-	private void addWordToList(String word, List<Stat> list) {
-		for (Stat s : list) {
-			if (s.word.equals(word)) {
-				s.occurrences++;
-				return;
-			}
+	private void runPipeline(String spec) throws Exception {
+		if (language == null) {
+			JOptionPane.showMessageDialog(frmWordSieve, "Choose the appropriate language!");
+			throw new AssertionError("Language not selected");
+		}
+		Job job = this.job;
+		File[] results = new File[0];
+		try {
+			List<Action> actions = Action.parse(spec);
+			results = new File[keepIntermediateResults ? actions.size() : 1];
+			for (int i = 0; i < results.length; i++)
+				results[i] = nextTmpFile();
+			File[] snapshots = null;
+			if (keepIntermediateResults)
+				snapshots = Arrays.copyOf(results, results.length - 1);
+			new Pipeline(actions, configuration, language, parallelCounting).run(currentlyProcessedFile,
+					results[results.length - 1], snapshots, job);
+			finishAction(job, results);
+		} catch (Exception ex) {
+			failAction(job, ex, results);
 		}
-		list.add(new Stat(word, 1));
 	}
 
-	private static boolean isWindows() {
-		return (OS.indexOf("win") >= 0);
-	}
+	private class PreviewPage extends SwingWorker<List<String>, Void> {
+		private final Lines index;
+		private final long firstLine;
 
-	private static boolean isUnix() {
-		return (OS.indexOf("nix") >= 0 || OS.indexOf("nux") >= 0 || OS.indexOf("aix") > 0);
-	}
+		public PreviewPage(Lines index, long firstLine) {
+			this.index = index;
+			this.firstLine = firstLine;
+		}
 
-	private class Stat {
-		String word;
-		int occurrences;
+		protected List<String> doInBackground() throws Exception {
+			return index.readLines(firstLine, LINES_IN_TEXT_AREA);
+		}
 
-		public Stat(String word, int occurrences) {
-			this.word = word;
-			this.occurrences = occurrences;
+		protected void done() {
+			previewPage = null;
+			if (index == previewIndex)
+				show();
+			long requested = requestedPreviewLine;
+			requestedPreviewLine = -1;
+			if (requested >= 0 && previewIndex != null)
+				showPreviewAt(requested);
+		}
+
+		private void show() {
+			List<String> lines;
+			try {
+				lines = get();
+			} catch (InterruptedException e) {
+				return;
+			} catch (ExecutionException e) {
+				JOptionPane.showMessageDialog(frmWordSieve, "Error loading preview: " + e.getCause().getMessage());
+				return;
+			}
+			StringBuilder buffer = new StringBuilder();
+			for (String line : lines)
+				buffer.append(line).append('\n');
+			txtpnPreview.setText(buffer.toString());
+			txtpnPreview.setCaretPosition(0);
+			if (lines.isEmpty())
+				lblPreviewPosition.setText("0 lines");
+			else
+				lblPreviewPosition.setText("Lines " + (firstLine + 1) + "-" + (firstLine + lines.size()) + " of "
+						+ index.lineCount());
 		}
 	}
 
-	private class MyComparator implements Comparator<Stat> {
-		public int compare(Stat s1, Stat s2) {
-			return s2.occurrences - s1.occurrences;
+	private class PreviewIndexer extends SwingWorker<Lines, Void> implements Cancellable {
+		private final File file;
+
+		public PreviewIndexer(File file) {
+			this.file = file;
 		}
 
-		public boolean equals(Object obj) {
-			return false;
+		protected Lines doInBackground() throws Exception {
+			return Inputs.index(file, this);
+		}
+
+		protected void done() {
+			if (isCancelled())
+				return;
+			try {
+				previewIndex = get();
+			} catch (Exception e) {
+				lblPreviewPosition.setText("");
+				return;
+			}
+			int lines = (int) Math.min(previewIndex.lineCount(), Integer.MAX_VALUE);
+			scrbPreview.setValues(0, LINES_IN_TEXT_AREA, 0, Math.max(lines, LINES_IN_TEXT_AREA));
+			scrbPreview.setBlockIncrement(LINES_IN_TEXT_AREA);
+			scrbPreview.setEnabled(true);
+			btnGoToLine.setEnabled(true);
+			showPreviewAt(0);
 		}
 	}
 }
@@ -0,0 +1,63 @@
+package sieve;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Processing steps that can be chained into a pipeline, named as in a
+ * pipeline spec such as "strip,count-stats,filter".
+ */
+public enum Action {
+
+	STRIP("strip") {
+		LineSink stage(LineSink next, Pipeline pipeline, Job job) throws Exception {
+			return pipeline.stripStage(next, job);
+		}
+	},
+	COUNT_SORT_WITH_STATS("count-stats") {
+		LineSink stage(LineSink next, Pipeline pipeline, Job job) throws Exception {
+			return pipeline.countSortStage(next, true, job);
+		}
+	},
+	COUNT_SORT_WITHOUT_STATS("count") {
+		LineSink stage(LineSink next, Pipeline pipeline, Job job) throws Exception {
+			return pipeline.countSortStage(next, false, job);
+		}
+	},
+	TOP_K("top-k") {
+		LineSink stage(LineSink next, Pipeline pipeline, Job job) throws Exception {
+			return pipeline.topKStage(next, job);
+		}
+	},
+	FILTER("filter") {
+		LineSink stage(LineSink next, Pipeline pipeline, Job job) throws Exception {
+			return pipeline.filterStage(next, job);
+		}
+	};
+
+	private final String name;
+
+	private Action(String name) {
+		this.name = name;
+	}
+
+	abstract LineSink stage(LineSink next, Pipeline pipeline, Job job) throws Exception;
+
+	public String getName() {
+		return name;
+	}
+
+	public static Action forName(String name) {
+		for (Action action : values())
+			if (action.name.equals(name))
+				return action;
+		throw new IllegalArgumentException("Unknown action '" + name + "'");
+	}
+
+	public static List<Action> parse(String spec) {
+		List<Action> actions = new ArrayList<Action>();
+		for (String name : spec.split(","))
+			actions.add(forName(name.trim()));
+		return actions;
+	}
+}
@@ -0,0 +1,176 @@
+package sieve;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Keeps only the first tab-separated column of every line of an Anki export.
+ * The input is memory-mapped window by window and the column bytes are copied
+ * to the output channel directly, without decoding lines into Strings. Line
+ * breaks are recognized the same way as by {@link java.io.BufferedReader} and
+ * written as the platform line separator. Compressed input and
+ * {@link FrequencyList} files are read as text into a buffer of the same
+ * role instead.
+ */
+public class AnkiStripper {
+
+	private static final long WINDOW_SIZE = 1L << 28;
+	private static final int DECOMPRESSED_WINDOW_SIZE = 1 << 20;
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+	private static final int PROGRESS_MASK = (1 << 20) - 1;
+	private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes();
+
+	private final Cancellable cancellable;
+	private final Metrics metrics;
+	private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+	private WritableByteChannel out;
+	private boolean bytesTracked;
+	private boolean inFirstColumn = true;
+	private boolean lineOpen;
+	private boolean afterCarriageReturn;
+	private long lines;
+	private long reportedLines;
+
+	private AnkiStripper(Cancellable cancellable, Metrics metrics) {
+		this.cancellable = cancellable;
+		this.metrics = metrics;
+	}
+
+	public static void strip(File input, File output, Cancellable cancellable) throws IOException {
+		new AnkiStripper(cancellable, null).run(input, output);
+	}
+
+	public static void strip(File input, File output, Job job) throws IOException {
+		Metrics.Timer timer = job.getMetrics().start(Metrics.Stage.STRIP);
+		AnkiStripper stripper = new AnkiStripper(job, job.getMetrics());
+		stripper.run(input, output);
+		timer.stop(stripper.lines, input.length());
+	}
+
+	private void run(File input, File outputFile) throws IOException {
+		if (Inputs.isEncoded(input)) {
+			runDecompressed(input, outputFile);
+			return;
+		}
+		out = Channels.newChannel(Compression.create(outputFile));
+		FileInputStream inStream = new FileInputStream(input);
+		try {
+			FileChannel in = inStream.getChannel();
+			long size = in.size();
+			if (metrics != null)
+				metrics.setInputSize(size);
+			for (long position = 0; position < size && !cancellable.isCancelled(); position += WINDOW_SIZE) {
+				ByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(WINDOW_SIZE, size - position));
+				scan(window);
+			}
+			if (lineOpen)
+				endLine();
+			drain();
+		} finally {
+			inStream.close();
+			out.close();
+		}
+	}
+
+	private void runDecompressed(File input, File outputFile) throws IOException {
+		InputStream stream = metrics != null ? Inputs.openStream(input, metrics) : Inputs.openStream(input);
+		bytesTracked = metrics != null && Compression.isCompressed(input);
+		out = Channels.newChannel(Compression.create(outputFile));
+		try {
+			ReadableByteChannel in = Channels.newChannel(stream);
+			ByteBuffer window = ByteBuffer.allocate(DECOMPRESSED_WINDOW_SIZE);
+			while (in.read(window) >= 0 && !cancellable.isCancelled()) {
+				window.flip();
+				scan(window);
+				window.clear();
+			}
+			if (lineOpen)
+				endLine();
+			drain();
+		} finally {
+			stream.close();
+			out.close();
+		}
+	}
+
+	private void scan(ByteBuffer window) throws IOException {
+		int limit = window.limit();
+		int columnStart = 0;
+		int reported = 0;
+		for (int i = 0; i < limit; i++) {
+			byte b = window.get(i);
+			if (b == '\n' || b == '\r') {
+				boolean skip = b == '\n' && afterCarriageReturn;
+				afterCarriageReturn = b == '\r';
+				if (!skip) {
+					if (inFirstColumn)
+						copy(window, columnStart, i);
+					endLine();
+				}
+				inFirstColumn = true;
+				columnStart = i + 1;
+			} else {
+				afterCarriageReturn = false;
+				lineOpen = true;
+				if (b == '\t' && inFirstColumn) {
+					copy(window, columnStart, i);
+					inFirstColumn = false;
+				}
+			}
+			if ((i & PROGRESS_MASK) == PROGRESS_MASK) {
+				progress(i + 1 - reported);
+				reported = i + 1;
+				// a mapped window is large enough to take seconds to scan
+				if (cancellable.isCancelled())
+					return;
+			}
+		}
+		if (inFirstColumn)
+			copy(window, columnStart, limit);
+		progress(limit - reported);
+	}
+
+	private void progress(long bytes) {
+		if (metrics == null)
+			return;
+		metrics.addProgress(bytesTracked ? 0 : bytes, lines - reportedLines);
+		reportedLines = lines;
+	}
+
+	private void endLine() throws IOException {
+		if (output.remaining() < LINE_SEPARATOR.length)
+			drain();
+		output.put(LINE_SEPARATOR);
+		lineOpen = false;
+		lines++;
+	}
+
+	private void copy(ByteBuffer window, int from, int to) throws IOException {
+		int limit = window.limit();
+		while (from < to) {
+			if (!output.hasRemaining())
+				drain();
+			int end = Math.min(to, from + output.remaining());
+			window.limit(end);
+			window.position(from);
+			output.put(window);
+			from = end;
+		}
+		window.limit(limit);
+	}
+
+	private void drain() throws IOException {
+		output.flip();
+		while (output.hasRemaining())
+			out.write(output);
+		output.clear();
+	}
+}
@@ -0,0 +1,186 @@
+package sieve;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a pipeline of actions over every file of a directory without the
+ * window, several files at a time, each as a single streaming pass. Taggers
+ * and filters come from the same 'config' file the window uses.
+ */
+public class Batch {
+
+	private static final String USAGE = "Usage: batch [-language <language>] [-threads <n>] [-tagger-processes <n>]\n"
+			+ "             [-metrics <file>] [-incremental] [-counting-memory <MB>] [-lemma-memo]\n"
+			+ "             <pipeline> <input directory> <output directory>\n"
+			+ "  pipeline: comma-separated actions out of strip, count-stats, count, top-k, filter\n"
+			+ "            counting actions count the lemma column of the tagger output; a lemma the\n"
+			+ "            tagger does not know, " + TaggerOutput.UNKNOWN
+			+ ", counts as the word, and of 'a|b' only 'a' counts\n"
+			+ "  metrics:  file to append a JSON line of stage timings and counters to for every input\n"
+			+ "  incremental: with a count-stats or count pipeline, count only text appended to each input\n"
+			+ "               since the last run, keeping the counts in a '" + FrequencyStore.SUFFIX
+			+ "' file next to it\n"
+			+ "  counting-memory: megabytes of counts kept in memory per input before they are spilled\n"
+			+ "                   to disk, 0 for no limit\n"
+			+ "  lemma-memo: with a count-stats or count pipeline, fill in tokens the tagger analyzed before\n"
+			+ "              from '" + LemmaMemo.DIRECTORY + "' and tag only the other lines";
+
+	private final Configuration configuration;
+	private final String language;
+	private final List<Action> pipeline;
+	private File metricsFile;
+	private boolean incremental;
+
+	public Batch(Configuration configuration, String language, List<Action> pipeline) {
+		this.configuration = configuration;
+		this.language = language;
+		this.pipeline = pipeline;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration configuration = new Configuration();
+		try {
+			configuration.load(new File(Configuration.FILE_NAME));
+		} catch (FileNotFoundException e) {
+			System.err.println("Could not find '" + Configuration.FILE_NAME + "' file. Running with default settings.");
+		} catch (IOException e) {
+			System.err.println("Could not read '" + Configuration.FILE_NAME + "' file: " + e.getMessage()
+					+ ". Running with default settings.");
+		}
+		for (String line : configuration.getMalformedLines())
+			System.err.println("Ignoring malformed setting '" + line + "' in '" + Configuration.FILE_NAME + "' file.");
+		String language = configuration.getLanguage();
+		int threads = Runtime.getRuntime().availableProcessors();
+		File metricsFile = null;
+		boolean incremental = false;
+		boolean lemmaMemo = false;
+		List<String> positional = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-language") && i + 1 < args.length)
+				language = args[++i];
+			else if (args[i].equals("-threads") && i + 1 < args.length)
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-tagger-processes") && i + 1 < args.length)
+				configuration.setTaggerProcesses(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-metrics") && i + 1 < args.length)
+				metricsFile = new File(args[++i]);
+			else if (args[i].equals("-counting-memory") && i + 1 < args.length)
+				configuration.setCountingMemory(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-incremental"))
+				incremental = true;
+			else if (args[i].equals("-lemma-memo"))
+				lemmaMemo = true;
+			else if (!args[i].equals("batch"))
+				positional.add(args[i]);
+		}
+		if (positional.size() != 3 || threads < 1) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		List<Action> pipeline = Action.parse(positional.get(0));
+		if ((incremental || lemmaMemo) && !isCounting(pipeline)) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		if (lemmaMemo)
+			configuration.setLemmaMemo(true);
+		File inputDirectory = new File(positional.get(1));
+		File outputDirectory = new File(positional.get(2));
+		if (!inputDirectory.isDirectory())
+			throw new IOException("'" + inputDirectory + "' is not a directory");
+		outputDirectory.mkdirs();
+
+		Batch batch = new Batch(configuration, language, pipeline);
+		batch.setMetricsFile(metricsFile);
+		batch.setIncremental(incremental);
+		int failed = batch.run(inputDirectory, outputDirectory, threads);
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	public int run(File inputDirectory, File outputDirectory, int threads) throws InterruptedException, IOException {
+		if (inputDirectory.getCanonicalFile().equals(outputDirectory.getCanonicalFile()))
+			throw new IOException("The output directory must not be the input directory");
+		File[] inputs = inputDirectory.listFiles();
+		if (inputs == null)
+			return 0;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> jobs = new ArrayList<Future<?>>();
+		List<File> jobInputs = new ArrayList<File>();
+		for (final File input : inputs) {
+			if (!input.isFile() || input.getName().endsWith(FrequencyStore.SUFFIX))
+				continue;
+			final File output = new File(outputDirectory, input.getName());
+			jobs.add(executor.submit(new Runnable() {
+				public void run() {
+					try {
+						process(input, output);
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}));
+			jobInputs.add(input);
+		}
+		executor.shutdown();
+
+		int failed = 0;
+		for (int i = 0; i < jobs.size(); i++) {
+			try {
+				jobs.get(i).get();
+				System.out.println(jobInputs.get(i).getName() + ": done");
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+				System.err.println(jobInputs.get(i).getName() + ": " + cause.getMessage());
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	public void setMetricsFile(File metricsFile) {
+		this.metricsFile = metricsFile;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public void process(File input, File output) throws Exception {
+		// the output is truncated first and deleted on failure
+		if (input.getCanonicalFile().equals(output.getCanonicalFile()))
+			throw new IOException("'" + output + "' is the input itself");
+		Job job = new Job(input.getPath());
+		boolean withStats = pipeline.get(0) == Action.COUNT_SORT_WITH_STATS;
+		// the memo reads the input twice, so it cannot tag a stream; a memo
+		// turned on in the config is left out of pipelines that do not tag
+		LemmaMemo memo = configuration.isLemmaMemo() && isCounting(pipeline) ? configuration.getLemmaMemo(language)
+				: null;
+		if (incremental)
+			Sieve.countSortIncremental(input, output, withStats, configuration.getTagger(language),
+					configuration.getTaggerCache(), memo, false, job);
+		else if (memo != null)
+			Sieve.countSort(input, output, withStats, configuration.getTagger(language),
+					configuration.getTaggerCache(), memo, false, configuration.getCountingMemoryBudget(), job);
+		else
+			new Pipeline(pipeline, configuration, language, false).run(input, output, job);
+		job.getMetrics().finish();
+		if (metricsFile != null) {
+			synchronized (this) {
+				job.getMetrics().appendTo(metricsFile);
+			}
+		}
+	}
+
+	private static boolean isCounting(List<Action> pipeline) {
+		return pipeline.size() == 1 && (pipeline.get(0) == Action.COUNT_SORT_WITH_STATS
+				|| pipeline.get(0) == Action.COUNT_SORT_WITHOUT_STATS);
+	}
+}
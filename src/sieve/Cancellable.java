@@ -0,0 +1,6 @@
+package sieve;
+
+public interface Cancellable {
+
+	boolean isCancelled();
+}
@@ -0,0 +1,521 @@
+package sieve;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes gzip and zstd compressed text as a stream. Compressed
+ * input is recognized by its first bytes, whatever the file is called, and
+ * output is compressed when the file name ends with {@value #GZIP_SUFFIX} or
+ * {@value #ZSTD_SUFFIX}.
+ * <p>
+ * Gzip is written in BGZF blocks, independent gzip members of at most 64 KB
+ * that say how long they are, as bgzip writes them. Blocks are compressed
+ * and, when read, decompressed on all processors. Other gzip files,
+ * including ones of several members, are read on one thread. Zstd goes
+ * through the 'zstd' program, which has to be on the PATH.
+ */
+public class Compression {
+
+	public static final String GZIP_SUFFIX = ".gz";
+	public static final String ZSTD_SUFFIX = ".zst";
+
+	private static final int HEADER_SIZE = 18;
+	private static final int MAX_BLOCK_SIZE = 1 << 16;
+	private static final int MAX_BLOCK_DATA = 0xFF00;
+	private static final int BLOCKS_AHEAD_PER_THREAD = 4;
+	private static final byte[] BGZF_HEADER = { 31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 'B', 'C', 2,
+			0 };
+	private static final byte[] BGZF_EOF = { 31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 'B', 'C', 2, 0,
+			27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+	private static final byte[] ZSTD_MAGIC = { 0x28, (byte) 0xB5, 0x2F, (byte) 0xFD };
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static ExecutorService executor;
+
+	private Compression() {
+	}
+
+	/**
+	 * Returns true if the file holds gzip or zstd compressed data.
+	 */
+	public static boolean isCompressed(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] magic = new byte[4];
+			int n = readFully(in, magic, 0, magic.length);
+			return isGzip(magic, n) || isZstd(magic, n);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns true if the file is gzip written in BGZF blocks, which can be
+	 * read from the start of any block.
+	 */
+	public static boolean isBgzf(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] header = new byte[HEADER_SIZE];
+			return isBgzf(header, readFully(in, header, 0, HEADER_SIZE));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Opens a BGZF file at the block that starts at the given offset of the
+	 * file.
+	 */
+	static BgzfInputStream openBgzf(File file, long blockOffset) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			in.getChannel().position(blockOffset);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return new BgzfInputStream(new BufferedInputStream(in, 1 << 16), blockOffset);
+	}
+
+	public static InputStream open(File file) throws IOException {
+		return open(new FileInputStream(file));
+	}
+
+	/**
+	 * Returns the decompressed stream if the stream is compressed and the
+	 * stream itself otherwise. Closing the returned stream closes the given
+	 * one.
+	 */
+	public static InputStream open(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+		byte[] header = new byte[HEADER_SIZE];
+		buffered.mark(HEADER_SIZE);
+		int n = readFully(buffered, header, 0, HEADER_SIZE);
+		buffered.reset();
+		if (isGzip(header, n)) {
+			if (isBgzf(header, n))
+				return new BgzfInputStream(buffered, 0);
+			return new GZIPInputStream(buffered, 1 << 16);
+		}
+		if (isZstd(header, n))
+			return zstd(buffered);
+		return buffered;
+	}
+
+	/**
+	 * Opens the file for writing, compressed as its name says.
+	 */
+	public static OutputStream create(File file) throws IOException {
+		String name = file.getName();
+		if (name.endsWith(GZIP_SUFFIX))
+			return new BgzfOutputStream(new FileOutputStream(file));
+		if (name.endsWith(ZSTD_SUFFIX))
+			return zstd(file);
+		return new FileOutputStream(file);
+	}
+
+	public static PrintWriter writer(File file) throws IOException {
+		return new PrintWriter(new BufferedWriter(new OutputStreamWriter(create(file)), 1 << 16));
+	}
+
+	private static boolean isGzip(byte[] magic, int n) {
+		return n >= 2 && magic[0] == 31 && magic[1] == (byte) 139;
+	}
+
+	/**
+	 * Returns true for the header of a BGZF block: a gzip member with just
+	 * the 'BC' extra field, which holds the size of the block.
+	 */
+	private static boolean isBgzf(byte[] header, int n) {
+		if (n < HEADER_SIZE || !isGzip(header, n) || header[2] != 8 || header[3] != 4)
+			return false;
+		for (int i = 10; i < BGZF_HEADER.length; i++)
+			if (header[i] != BGZF_HEADER[i])
+				return false;
+		return true;
+	}
+
+	private static boolean isZstd(byte[] magic, int n) {
+		return n >= 4 && Arrays.equals(Arrays.copyOf(magic, 4), ZSTD_MAGIC);
+	}
+
+	private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			int n = in.read(buffer, offset + read, length - read);
+			if (n < 0)
+				break;
+			read += n;
+		}
+		return read;
+	}
+
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "compression");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	private static byte[] await(Future<byte[]> block) throws IOException {
+		try {
+			return block.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while decompressing", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Decompresses the stream with the 'zstd' program, which the stream is fed
+	 * to on a thread of its own.
+	 */
+	private static InputStream zstd(final InputStream in) throws IOException {
+		final Process process = startZstd(new ProcessBuilder("zstd", "-dcq"));
+		Thread feeder = new Thread("zstd-input") {
+			public void run() {
+				OutputStream out = process.getOutputStream();
+				try {
+					byte[] buffer = new byte[1 << 16];
+					int n;
+					while ((n = in.read(buffer)) > 0)
+						out.write(buffer, 0, n);
+				} catch (IOException e) {
+				} finally {
+					try {
+						out.close();
+						in.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		};
+		feeder.setDaemon(true);
+		feeder.start();
+		return new BufferedInputStream(process.getInputStream(), 1 << 16) {
+			private boolean ended;
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n < 0)
+					checkExit();
+				return n;
+			}
+
+			public int read() throws IOException {
+				int b = super.read();
+				if (b < 0)
+					checkExit();
+				return b;
+			}
+
+			public void close() throws IOException {
+				if (!ended)
+					Tagger.destroy(process);
+				super.close();
+				in.close();
+			}
+
+			private void checkExit() throws IOException {
+				if (ended)
+					return;
+				ended = true;
+				try {
+					if (process.waitFor() != 0)
+						throw new IOException("zstd could not decompress the input");
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while decompressing", e);
+				}
+			}
+		};
+	}
+
+	private static OutputStream zstd(File file) throws IOException {
+		final Process process = startZstd(new ProcessBuilder("zstd", "-qc", "-T0").redirectOutput(file));
+		return new FilterOutputStream(process.getOutputStream()) {
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			public void close() throws IOException {
+				super.close();
+				try {
+					if (process.waitFor() != 0)
+						throw new IOException("zstd could not compress the output");
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while compressing", e);
+				}
+			}
+		};
+	}
+
+	private static Process startZstd(ProcessBuilder builder) throws IOException {
+		try {
+			return builder.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		} catch (IOException e) {
+			throw new IOException("Zstd compressed files need the 'zstd' program on the PATH", e);
+		}
+	}
+
+	/**
+	 * Reads BGZF blocks ahead and inflates them on the shared threads,
+	 * handing the data over in order. A read never returns data of more than
+	 * one block, so the block every byte read came from is known.
+	 */
+	static class BgzfInputStream extends InputStream {
+		private final InputStream in;
+		private final Deque<Future<byte[]>> blocks = new ArrayDeque<Future<byte[]>>();
+		private final Deque<Long> blockOffsets = new ArrayDeque<Long>();
+		private long nextOffset;
+		private long currentOffset;
+		private byte[] current = new byte[0];
+		private int position;
+		private boolean ended;
+
+		/**
+		 * @param offset
+		 *            offset in the file of the first block of the stream
+		 */
+		BgzfInputStream(InputStream in, long offset) {
+			this.in = in;
+			nextOffset = offset;
+			currentOffset = offset;
+		}
+
+		/**
+		 * Returns the offset in the file of the block the last byte was read
+		 * from.
+		 */
+		long blockOffset() {
+			return currentOffset;
+		}
+
+		/**
+		 * Returns the position in the data of that block after the last byte
+		 * read.
+		 */
+		int blockPosition() {
+			return position;
+		}
+
+		public int read() throws IOException {
+			if (!fill())
+				return -1;
+			return current[position++] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!fill())
+				return -1;
+			int n = Math.min(len, current.length - position);
+			System.arraycopy(current, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		public void close() throws IOException {
+			for (Future<byte[]> block : blocks)
+				block.cancel(false);
+			blocks.clear();
+			blockOffsets.clear();
+			in.close();
+		}
+
+		private boolean fill() throws IOException {
+			while (position == current.length) {
+				while (!ended && blocks.size() < THREADS * BLOCKS_AHEAD_PER_THREAD)
+					readBlock();
+				if (blocks.isEmpty())
+					return false;
+				current = await(blocks.poll());
+				currentOffset = blockOffsets.poll();
+				position = 0;
+			}
+			return true;
+		}
+
+		private void readBlock() throws IOException {
+			byte[] header = new byte[HEADER_SIZE];
+			int n = readFully(in, header, 0, HEADER_SIZE);
+			if (n == 0) {
+				ended = true;
+				return;
+			}
+			if (!isBgzf(header, n))
+				throw new IOException("Not a BGZF block");
+			int size = ((header[16] & 0xFF) | (header[17] & 0xFF) << 8) + 1;
+			final byte[] block = Arrays.copyOf(header, size);
+			if (readFully(in, block, HEADER_SIZE, size - HEADER_SIZE) < size - HEADER_SIZE)
+				throw new EOFException("Truncated BGZF block");
+			blockOffsets.add(nextOffset);
+			nextOffset += size;
+			blocks.add(executor().submit(new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					return inflate(block);
+				}
+			}));
+		}
+
+		private static byte[] inflate(byte[] block) throws IOException {
+			int size = block.length;
+			int length = readInt(block, size - 4);
+			byte[] data = new byte[length];
+			Inflater inflater = new Inflater(true);
+			try {
+				inflater.setInput(block, HEADER_SIZE, size - HEADER_SIZE - 8);
+				int n = 0;
+				while (n < length && !inflater.finished() && !inflater.needsInput())
+					n += inflater.inflate(data, n, length - n);
+				if (n != length)
+					throw new IOException("Corrupt BGZF block");
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt BGZF block", e);
+			} finally {
+				inflater.end();
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			if ((int) crc.getValue() != readInt(block, size - 8))
+				throw new IOException("BGZF block fails its checksum");
+			return data;
+		}
+	}
+
+	/**
+	 * Cuts the data into BGZF blocks and deflates them on the shared threads,
+	 * writing them in order.
+	 */
+	private static class BgzfOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final Deque<Future<byte[]>> blocks = new ArrayDeque<Future<byte[]>>();
+		private byte[] buffer = new byte[MAX_BLOCK_DATA];
+		private int position;
+		private boolean closed;
+
+		BgzfOutputStream(OutputStream out) {
+			this.out = out;
+		}
+
+		public void write(int b) throws IOException {
+			if (position == buffer.length)
+				flushBlock();
+			buffer[position++] = (byte) b;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (position == buffer.length)
+					flushBlock();
+				int n = Math.min(len, buffer.length - position);
+				System.arraycopy(b, off, buffer, position, n);
+				position += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+			try {
+				if (position > 0)
+					flushBlock();
+				while (!blocks.isEmpty())
+					out.write(await(blocks.poll()));
+				out.write(BGZF_EOF);
+			} finally {
+				out.close();
+			}
+		}
+
+		private void flushBlock() throws IOException {
+			final byte[] data = buffer;
+			final int length = position;
+			blocks.add(executor().submit(new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					return deflate(data, length);
+				}
+			}));
+			buffer = new byte[MAX_BLOCK_DATA];
+			position = 0;
+			while (blocks.size() > THREADS * BLOCKS_AHEAD_PER_THREAD)
+				out.write(await(blocks.poll()));
+		}
+
+		private static byte[] deflate(byte[] data, int length) throws IOException {
+			byte[] block = new byte[MAX_BLOCK_SIZE];
+			System.arraycopy(BGZF_HEADER, 0, block, 0, BGZF_HEADER.length);
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			int n;
+			try {
+				deflater.setInput(data, 0, length);
+				deflater.finish();
+				n = HEADER_SIZE;
+				while (!deflater.finished() && n < MAX_BLOCK_SIZE - 8)
+					n += deflater.deflate(block, n, MAX_BLOCK_SIZE - 8 - n);
+				if (!deflater.finished())
+					throw new IOException("Data does not fit a BGZF block");
+			} finally {
+				deflater.end();
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, length);
+			writeInt(block, n, (int) crc.getValue());
+			writeInt(block, n + 4, length);
+			int size = n + 8;
+			block[16] = (byte) (size - 1);
+			block[17] = (byte) ((size - 1) >>> 8);
+			return Arrays.copyOf(block, size);
+		}
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16
+				| (bytes[offset + 3] & 0xFF) << 24;
+	}
+
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) value;
+		bytes[offset + 1] = (byte) (value >>> 8);
+		bytes[offset + 2] = (byte) (value >>> 16);
+		bytes[offset + 3] = (byte) (value >>> 24);
+	}
+}
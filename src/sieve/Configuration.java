@@ -0,0 +1,347 @@
+package sieve;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings stored in the 'config' file, shared by the window and the batch
+ * mode.
+ */
+public class Configuration {
+
+	public static final String FILE_NAME = "config";
+	public static final String DEFAULT_LANGUAGE = "English";
+	public static final String DEFAULT_WORKING_DIRECTORY = "~";
+	public static final String TAGGER_CACHE_DIR = "cache/tagger";
+
+	private static final String FILTER_PREFIX = "filter";
+	private static final String TAGGER_PREFIX = "tagger";
+	private static final String LAST_WORKING_DIRECTORY = "lastWorkingDirectory";
+	private static final String LAST_USED_LANGUAGE = "lastUsedLanguage";
+	private static final String PARALLEL_COUNTING = "parallelCounting";
+	private static final String KEEP_INTERMEDIATE_RESULTS = "keepIntermediateResults";
+	private static final String INCREMENTAL_COUNTING = "incrementalCounting";
+	private static final String COUNTING_MEMORY = "countingMemory";
+	private static final String TOP_K = "topK";
+	private static final String TOP_K_ERROR = "topKError";
+	private static final String TOP_K_SKETCH = "topKSketch";
+	private static final String LEMMA_MEMO = "lemmaMemo";
+	private static final String LEMMA_MEMO_CONFIDENCE = "lemmaMemoConfidence";
+	private static final String LAST_PIPELINE = "lastPipeline";
+	private static final String TAGGER_PROCESSES = "taggerProcesses";
+	private static final String TAGGER_CACHE_SIZE = "taggerCacheSize";
+	private static final String UNDO_DEPTH = "undoDepth";
+	private static final String UNDO_SIZE = "undoSize";
+	private static final String UNDO_MEMORY = "undoMemory";
+
+	private String lastWorkingDirectory = DEFAULT_WORKING_DIRECTORY;
+	private String language = DEFAULT_LANGUAGE;
+	private boolean parallelCounting;
+	private boolean keepIntermediateResults;
+	private boolean incrementalCounting;
+	private int countingMemory = 512;
+	private int topK = 5000;
+	private double topKError = 0.0001;
+	private boolean topKSketch;
+	private boolean lemmaMemo;
+	private double lemmaMemoConfidence = 0.95;
+	private String lastPipeline = "strip,count-stats,filter";
+	private int taggerProcesses = 1;
+	private int taggerCacheSize = 1024;
+	private int undoDepth = 20;
+	private int undoSize = 2048;
+	private int undoMemory = 64;
+	private Map<String, List<String>> filterMap = new HashMap<String, List<String>>();
+	private Map<String, String> taggerMap = new HashMap<String, String>();
+	private final List<String> malformed = new ArrayList<String>();
+
+	public void load(File file) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String chunk[] = line.split("=");
+				if (chunk.length != 2) {
+					if (line.trim().length() > 0)
+						malformed.add(line);
+					continue;
+				}
+				try {
+					if (chunk[0].equals(LAST_WORKING_DIRECTORY))
+						lastWorkingDirectory = chunk[1];
+					else if (chunk[0].equals(LAST_USED_LANGUAGE))
+						language = chunk[1];
+					else if (chunk[0].equals(PARALLEL_COUNTING))
+						parallelCounting = Boolean.parseBoolean(chunk[1]);
+					else if (chunk[0].equals(KEEP_INTERMEDIATE_RESULTS))
+						keepIntermediateResults = Boolean.parseBoolean(chunk[1]);
+					else if (chunk[0].equals(INCREMENTAL_COUNTING))
+						incrementalCounting = Boolean.parseBoolean(chunk[1]);
+					else if (chunk[0].equals(COUNTING_MEMORY))
+						countingMemory = Integer.parseInt(chunk[1]);
+					else if (chunk[0].equals(TOP_K))
+						topK = Integer.parseInt(chunk[1]);
+					else if (chunk[0].equals(TOP_K_ERROR))
+						topKError = Double.parseDouble(chunk[1]);
+					else if (chunk[0].equals(TOP_K_SKETCH))
+						topKSketch = Boolean.parseBoolean(chunk[1]);
+					else if (chunk[0].equals(LEMMA_MEMO))
+						lemmaMemo = Boolean.parseBoolean(chunk[1]);
+					else if (chunk[0].equals(LEMMA_MEMO_CONFIDENCE))
+						lemmaMemoConfidence = Double.parseDouble(chunk[1]);
+					else if (chunk[0].equals(LAST_PIPELINE))
+						lastPipeline = chunk[1];
+					else if (chunk[0].equals(TAGGER_PROCESSES))
+						taggerProcesses = Integer.parseInt(chunk[1]);
+					else if (chunk[0].equals(TAGGER_CACHE_SIZE))
+						taggerCacheSize = Integer.parseInt(chunk[1]);
+					else if (chunk[0].equals(UNDO_DEPTH))
+						undoDepth = Integer.parseInt(chunk[1]);
+					else if (chunk[0].equals(UNDO_SIZE))
+						undoSize = Integer.parseInt(chunk[1]);
+					else if (chunk[0].equals(UNDO_MEMORY))
+						undoMemory = Integer.parseInt(chunk[1]);
+					else if (chunk[0].startsWith(FILTER_PREFIX))
+						filterMap.put(chunk[0].substring(FILTER_PREFIX.length()),
+								new ArrayList<String>(Arrays.asList(chunk[1].split(File.pathSeparator))));
+					else if (chunk[0].startsWith(TAGGER_PREFIX))
+						taggerMap.put(chunk[0].substring(TAGGER_PREFIX.length()), chunk[1]);
+				} catch (NumberFormatException e) {
+					malformed.add(line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the lines of the loaded file that are not "key=value" or whose
+	 * numbers could not be read; their settings keep the default values.
+	 */
+	public List<String> getMalformedLines() {
+		return malformed;
+	}
+
+	public void save(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println(LAST_WORKING_DIRECTORY + "=" + lastWorkingDirectory);
+			out.println(LAST_USED_LANGUAGE + "=" + language);
+			out.println(PARALLEL_COUNTING + "=" + parallelCounting);
+			out.println(KEEP_INTERMEDIATE_RESULTS + "=" + keepIntermediateResults);
+			out.println(INCREMENTAL_COUNTING + "=" + incrementalCounting);
+			out.println(COUNTING_MEMORY + "=" + countingMemory);
+			out.println(TOP_K + "=" + topK);
+			out.println(TOP_K_ERROR + "=" + topKError);
+			out.println(TOP_K_SKETCH + "=" + topKSketch);
+			out.println(LEMMA_MEMO + "=" + lemmaMemo);
+			out.println(LEMMA_MEMO_CONFIDENCE + "=" + lemmaMemoConfidence);
+			out.println(LAST_PIPELINE + "=" + lastPipeline);
+			out.println(TAGGER_PROCESSES + "=" + taggerProcesses);
+			out.println(TAGGER_CACHE_SIZE + "=" + taggerCacheSize);
+			out.println(UNDO_DEPTH + "=" + undoDepth);
+			out.println(UNDO_SIZE + "=" + undoSize);
+			out.println(UNDO_MEMORY + "=" + undoMemory);
+			for (Map.Entry<String, List<String>> entry : filterMap.entrySet()) {
+				StringBuilder paths = new StringBuilder();
+				for (String path : entry.getValue()) {
+					if (paths.length() > 0)
+						paths.append(File.pathSeparator);
+					paths.append(path);
+				}
+				out.println(FILTER_PREFIX + entry.getKey() + "=" + paths);
+			}
+			for (Map.Entry<String, String> entry : taggerMap.entrySet())
+				out.println(TAGGER_PREFIX + entry.getKey() + "=" + entry.getValue());
+		} finally {
+			out.close();
+		}
+	}
+
+	public Tagger getTagger(String language) {
+		return new Tagger(language, taggerMap.get(language), taggerProcesses);
+	}
+
+	/**
+	 * Returns the tagger output cache, limited to 'taggerCacheSize' megabytes,
+	 * or null if that limit is 0.
+	 */
+	public TaggerCache getTaggerCache() {
+		if (taggerCacheSize <= 0)
+			return null;
+		return new TaggerCache(new File(TAGGER_CACHE_DIR), taggerCacheSize * 1024L * 1024L);
+	}
+
+	/**
+	 * Returns an undo history keeping at most 'undoDepth' steps and 'undoSize'
+	 * megabytes of compressed results, 'undoMemory' megabytes of which in
+	 * memory.
+	 */
+	public UndoHistory getUndoHistory(File directory) {
+		return new UndoHistory(directory, undoDepth, undoSize * 1024L * 1024L, undoMemory * 1024L * 1024L);
+	}
+
+	/**
+	 * Returns the number of bytes sequential counting may keep in memory
+	 * before spilling counts to disk, 'countingMemory' megabytes, or 0 for no
+	 * limit.
+	 */
+	public long getCountingMemoryBudget() {
+		return Math.max(0, countingMemory) * 1024L * 1024L;
+	}
+
+	/**
+	 * Returns a counter of the 'topK' most frequent words whose counts may be
+	 * over by at most 'topKError' times the number of words, tightened with a
+	 * Count-Min sketch if 'topKSketch' is set.
+	 */
+	public TopKCounter getTopKCounter() {
+		return new TopKCounter(topK, topKError, topKSketch);
+	}
+
+	/**
+	 * Returns the remembered lemmas of the language, filling in tokens whose
+	 * most frequent analysis makes up 'lemmaMemoConfidence' of those seen.
+	 */
+	public LemmaMemo getLemmaMemo(String language) {
+		return LemmaMemo.open(new File(LemmaMemo.DIRECTORY), getTagger(language), lemmaMemoConfidence);
+	}
+
+	public FilterSet getFilterSet(String language) throws IOException {
+		List<String> paths = filterMap.get(language);
+		if (paths == null || paths.isEmpty())
+			throw new IOException("No filter file was specified for " + language);
+		return FilterSet.load(paths);
+	}
+
+	public String getLastWorkingDirectory() {
+		return lastWorkingDirectory;
+	}
+
+	public void setLastWorkingDirectory(String lastWorkingDirectory) {
+		this.lastWorkingDirectory = lastWorkingDirectory;
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	public void setLanguage(String language) {
+		this.language = language;
+	}
+
+	public boolean isParallelCounting() {
+		return parallelCounting;
+	}
+
+	public void setParallelCounting(boolean parallelCounting) {
+		this.parallelCounting = parallelCounting;
+	}
+
+	public boolean isIncrementalCounting() {
+		return incrementalCounting;
+	}
+
+	public void setIncrementalCounting(boolean incrementalCounting) {
+		this.incrementalCounting = incrementalCounting;
+	}
+
+	public int getCountingMemory() {
+		return countingMemory;
+	}
+
+	public void setCountingMemory(int countingMemory) {
+		this.countingMemory = countingMemory;
+	}
+
+	public int getTopK() {
+		return topK;
+	}
+
+	public void setTopK(int topK) {
+		this.topK = topK;
+	}
+
+	public double getTopKError() {
+		return topKError;
+	}
+
+	public void setTopKError(double topKError) {
+		this.topKError = topKError;
+	}
+
+	public boolean isTopKSketch() {
+		return topKSketch;
+	}
+
+	public void setTopKSketch(boolean topKSketch) {
+		this.topKSketch = topKSketch;
+	}
+
+	public boolean isLemmaMemo() {
+		return lemmaMemo;
+	}
+
+	public void setLemmaMemo(boolean lemmaMemo) {
+		this.lemmaMemo = lemmaMemo;
+	}
+
+	public double getLemmaMemoConfidence() {
+		return lemmaMemoConfidence;
+	}
+
+	public void setLemmaMemoConfidence(double lemmaMemoConfidence) {
+		this.lemmaMemoConfidence = lemmaMemoConfidence;
+	}
+
+	public boolean isKeepIntermediateResults() {
+		return keepIntermediateResults;
+	}
+
+	public void setKeepIntermediateResults(boolean keepIntermediateResults) {
+		this.keepIntermediateResults = keepIntermediateResults;
+	}
+
+	public String getLastPipeline() {
+		return lastPipeline;
+	}
+
+	public void setLastPipeline(String lastPipeline) {
+		this.lastPipeline = lastPipeline;
+	}
+
+	public int getTaggerProcesses() {
+		return taggerProcesses;
+	}
+
+	public void setTaggerProcesses(int taggerProcesses) {
+		this.taggerProcesses = taggerProcesses;
+	}
+
+	public int getTaggerCacheSize() {
+		return taggerCacheSize;
+	}
+
+	public void setTaggerCacheSize(int taggerCacheSize) {
+		this.taggerCacheSize = taggerCacheSize;
+	}
+
+	public Map<String, List<String>> getFilterMap() {
+		return filterMap;
+	}
+
+	public Map<String, String> getTaggerMap() {
+		return taggerMap;
+	}
+}
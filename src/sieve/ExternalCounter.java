@@ -0,0 +1,388 @@
+package sieve;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Counts words within a memory budget. Words are counted in a
+ * {@link WordCounter} until its estimated size exceeds the budget; its
+ * counts are then written to disk as a run sorted by word and counting
+ * starts over with an empty table. Ranking merges the runs, summing the
+ * counts of each word, and sorts the result by frequency in runs of the same
+ * budget. The ranking is the same as ranking all counts in memory: by count,
+ * then by first occurrence.
+ * <p>
+ * A run is written straight from the table's byte arena in the order of
+ * the words' UTF-8 bytes, so spilling needs no copy of the counts, and words
+ * are stored as length-prefixed bytes of any length. Every file written is
+ * deleted when ranking ends or fails, or when spilling fails.
+ */
+public class ExternalCounter {
+
+	private static final int ENTRY_OVERHEAD = 96;
+	private static final int MAX_FAN_IN = 64;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Comparator<Entry> BY_WORD = new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			return Arrays.compareUnsigned(e1.word, e2.word);
+		}
+	};
+
+	private static final Comparator<Entry> BY_FREQUENCY = new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			if (e1.count != e2.count)
+				return e1.count > e2.count ? -1 : 1;
+			if (e1.firstSeen != e2.firstSeen)
+				return e1.firstSeen < e2.firstSeen ? -1 : 1;
+			return Arrays.compareUnsigned(e1.word, e2.word);
+		}
+	};
+
+	private final long memoryBudget;
+	private final List<File> runs = new ArrayList<File>();
+	private final List<File> files = new ArrayList<File>();
+	private WordCounter counter = new WordCounter();
+	private long memory;
+	private long position;
+	private long tokens;
+
+	public ExternalCounter(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	public void add(String word) throws IOException {
+		add(word, 0, word.length());
+	}
+
+	/**
+	 * Counts the word at the given range of the text.
+	 */
+	public void add(String text, int from, int to) throws IOException {
+		int size = counter.size();
+		counter.add(text, from, to, 1, position++);
+		tokens++;
+		if (counter.size() > size)
+			grew(to - from);
+	}
+
+	/**
+	 * Adds occurrences of a word counted elsewhere, first seen at the given
+	 * position of the whole counted stream.
+	 */
+	public void add(String word, int occurrences, long firstSeen) throws IOException {
+		int size = counter.size();
+		counter.add(word, occurrences, firstSeen);
+		position = Math.max(position, firstSeen) + occurrences;
+		tokens += occurrences;
+		if (counter.size() > size)
+			grew(word.length());
+	}
+
+	/**
+	 * Returns true if counts did not fit in the budget and were written to
+	 * disk.
+	 */
+	public boolean isSpilled() {
+		return !runs.isEmpty();
+	}
+
+	/**
+	 * Returns the counts if they all fit in memory.
+	 */
+	public WordCounter getCounter() {
+		if (isSpilled())
+			throw new IllegalStateException("Counts were spilled to disk");
+		return counter;
+	}
+
+	/**
+	 * Passes the ranked words to the sink as Count&Sort writes them, see
+	 * {@link Ranking}. Deletes the runs.
+	 */
+	public void rank(boolean withStats, LineSink out, Metrics metrics, Cancellable cancellable) throws Exception {
+		try {
+			Metrics.Timer timer = metrics.start(Metrics.Stage.SORT);
+			if (counter.size() > 0)
+				spill();
+			File merged = mergeAll(runs, BY_WORD, cancellable);
+			runs.clear();
+			List<File> frequencyRuns = sortByFrequency(merged, cancellable);
+			merged.delete();
+			RunMerger ranked = new RunMerger(mergeDown(frequencyRuns, BY_FREQUENCY, cancellable), BY_FREQUENCY);
+			timer.stop();
+
+			timer = metrics.start(Metrics.Stage.WRITE);
+			Ranking ranking = new Ranking(out, withStats, tokens);
+			try {
+				Entry entry;
+				while ((entry = ranked.next()) != null && !cancellable.isCancelled())
+					ranking.add(new String(entry.word, UTF8), entry.count);
+			} finally {
+				ranked.close();
+			}
+			if (!cancellable.isCancelled())
+				ranking.finish();
+			timer.stop(ranking.size(), 0);
+		} finally {
+			delete();
+		}
+	}
+
+	/**
+	 * Deletes the files written so far.
+	 */
+	public void delete() {
+		for (File file : files)
+			file.delete();
+		files.clear();
+		runs.clear();
+	}
+
+	private void grew(int wordLength) throws IOException {
+		memory += ENTRY_OVERHEAD + 2 * wordLength;
+		if (memory > memoryBudget) {
+			try {
+				spill();
+			} catch (IOException e) {
+				delete();
+				throw e;
+			}
+		}
+	}
+
+	private void spill() throws IOException {
+		File file = newRun();
+		RunWriter out = new RunWriter(file);
+		try {
+			for (int id : counter.byteOrder())
+				out.write(counter, id);
+		} finally {
+			out.close();
+		}
+		runs.add(file);
+		counter = new WordCounter();
+		memory = 0;
+	}
+
+	private File newRun() throws IOException {
+		File file = File.createTempFile("sieve", ".run");
+		files.add(file);
+		return file;
+	}
+
+	private List<File> sortByFrequency(File merged, Cancellable cancellable) throws IOException {
+		List<File> sorted = new ArrayList<File>();
+		RunReader in = new RunReader(merged);
+		try {
+			List<Entry> entries = new ArrayList<Entry>();
+			long used = 0;
+			Entry entry;
+			while ((entry = in.next()) != null && !cancellable.isCancelled()) {
+				entries.add(entry);
+				used += ENTRY_OVERHEAD + entry.word.length;
+				if (used > memoryBudget) {
+					Collections.sort(entries, BY_FREQUENCY);
+					sorted.add(writeRun(entries));
+					entries.clear();
+					used = 0;
+				}
+			}
+			Collections.sort(entries, BY_FREQUENCY);
+			sorted.add(writeRun(entries));
+		} finally {
+			in.close();
+		}
+		return sorted;
+	}
+
+	/**
+	 * Merges runs into a single one, summing the counts of equal entries.
+	 */
+	private File mergeAll(List<File> runs, Comparator<Entry> order, Cancellable cancellable)
+			throws IOException {
+		List<File> merged = mergeDown(runs, order, cancellable);
+		if (merged.size() == 1)
+			return merged.get(0);
+		return mergeGroup(merged, order, cancellable);
+	}
+
+	/**
+	 * Merges runs in groups until at most {@value #MAX_FAN_IN} are left.
+	 */
+	private List<File> mergeDown(List<File> runs, Comparator<Entry> order, Cancellable cancellable)
+			throws IOException {
+		List<File> current = new ArrayList<File>(runs);
+		while (current.size() > MAX_FAN_IN && !cancellable.isCancelled()) {
+			List<File> next = new ArrayList<File>();
+			for (int i = 0; i < current.size(); i += MAX_FAN_IN)
+				next.add(mergeGroup(current.subList(i, Math.min(current.size(), i + MAX_FAN_IN)), order,
+						cancellable));
+			current = next;
+		}
+		return current;
+	}
+
+	private File mergeGroup(List<File> group, Comparator<Entry> order, Cancellable cancellable)
+			throws IOException {
+		File file = newRun();
+		RunMerger merger = new RunMerger(group, order);
+		RunWriter out = new RunWriter(file);
+		try {
+			Entry entry;
+			while ((entry = merger.next()) != null && !cancellable.isCancelled())
+				out.write(entry);
+		} finally {
+			merger.close();
+			out.close();
+		}
+		return file;
+	}
+
+	private File writeRun(List<Entry> entries) throws IOException {
+		File file = newRun();
+		RunWriter out = new RunWriter(file);
+		try {
+			for (Entry entry : entries)
+				out.write(entry);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static class Entry {
+		final byte[] word;
+		int count;
+		long firstSeen;
+
+		Entry(byte[] word, int count, long firstSeen) {
+			this.word = word;
+			this.count = count;
+			this.firstSeen = firstSeen;
+		}
+	}
+
+	private static class RunWriter {
+		private final DataOutputStream out;
+
+		RunWriter(File file) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+		}
+
+		void write(Entry entry) throws IOException {
+			out.writeBoolean(true);
+			out.writeInt(entry.word.length);
+			out.write(entry.word);
+			out.writeInt(entry.count);
+			out.writeLong(entry.firstSeen);
+		}
+
+		void write(WordCounter counter, int id) throws IOException {
+			out.writeBoolean(true);
+			counter.writeWord(id, out);
+			out.writeInt(counter.count(id));
+			out.writeLong(counter.firstSeen(id));
+		}
+
+		void close() throws IOException {
+			out.writeBoolean(false);
+			out.close();
+		}
+	}
+
+	private static class RunReader {
+		private final File file;
+		private final DataInputStream in;
+		Entry head;
+
+		RunReader(File file) throws IOException {
+			this.file = file;
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		}
+
+		Entry next() throws IOException {
+			head = null;
+			if (!in.readBoolean())
+				return null;
+			byte[] word = new byte[in.readInt()];
+			in.readFully(word);
+			head = new Entry(word, in.readInt(), in.readLong());
+			return head;
+		}
+
+		void close() throws IOException {
+			in.close();
+			file.delete();
+		}
+	}
+
+	/**
+	 * K-way merge of runs sorted in the same order. Entries equal in that
+	 * order come from different runs and are combined into one.
+	 */
+	private static class RunMerger {
+		private final List<RunReader> readers = new ArrayList<RunReader>();
+		private final PriorityQueue<RunReader> queue;
+		private final Comparator<Entry> order;
+
+		RunMerger(List<File> runs, final Comparator<Entry> order) throws IOException {
+			this.order = order;
+			queue = new PriorityQueue<RunReader>(Math.max(1, runs.size()), new Comparator<RunReader>() {
+				public int compare(RunReader r1, RunReader r2) {
+					return order.compare(r1.head, r2.head);
+				}
+			});
+			try {
+				for (File run : runs) {
+					RunReader reader = new RunReader(run);
+					readers.add(reader);
+					if (reader.next() != null)
+						queue.add(reader);
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		Entry next() throws IOException {
+			RunReader reader = queue.poll();
+			if (reader == null)
+				return null;
+			Entry entry = reader.head;
+			advance(reader);
+			while (!queue.isEmpty() && order.compare(queue.peek().head, entry) == 0) {
+				reader = queue.poll();
+				entry.count += reader.head.count;
+				entry.firstSeen = Math.min(entry.firstSeen, reader.head.firstSeen);
+				advance(reader);
+			}
+			return entry;
+		}
+
+		private void advance(RunReader reader) throws IOException {
+			if (reader.next() != null)
+				queue.add(reader);
+		}
+
+		void close() throws IOException {
+			for (RunReader reader : readers)
+				reader.close();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package sieve;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Union of the words of one or more filter files, hashed for constant-time
+ * lookup. Sets are cached and rebuilt only when one of the files changes.
+ */
+public class FilterSet {
+
+	private static final Map<String, FilterSet> cache = new HashMap<String, FilterSet>();
+
+	private final Set<String> words;
+
+	private FilterSet(Set<String> words) {
+		this.words = words;
+	}
+
+	public static FilterSet load(List<String> paths) throws IOException {
+		StringBuilder key = new StringBuilder();
+		for (String path : paths) {
+			File file = new File(path);
+			key.append(file.getAbsolutePath()).append('|').append(file.lastModified()).append('|')
+					.append(file.length()).append('\n');
+		}
+		synchronized (cache) {
+			FilterSet set = cache.get(key.toString());
+			if (set == null) {
+				Set<String> words = new HashSet<String>();
+				for (String path : paths)
+					readWords(path, words);
+				set = new FilterSet(words);
+				cache.clear();
+				cache.put(key.toString(), set);
+			}
+			return set;
+		}
+	}
+
+	public boolean contains(String word) {
+		return words.contains(word);
+	}
+
+	public int size() {
+		return words.size();
+	}
+
+	private static void readWords(String path, Set<String> words) throws IOException {
+		if (FrequencyList.isFrequencyList(new File(path))) {
+			FrequencyList list = FrequencyList.open(new File(path));
+			for (int i = 0; i < list.size(); i++)
+				words.add(list.word(i));
+			return;
+		}
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path)));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				words.add(line);
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,427 @@
+package sieve;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ranked word list in a binary file that is read through memory mapping.
+ * Entries are stored in list order as primitive arrays of counts and ranks;
+ * the words are sorted by their UTF-8 bytes and front-coded in blocks of
+ * {@value #BLOCK_SIZE}, each block starting with a full word, with an index
+ * of block offsets. Entries are found by position in constant time and by
+ * word with a binary search over the blocks.
+ * <p>
+ * As text, a list reads like the output of Count&Sort, see {@link Ranking};
+ * the coverage and summary of a list with stats are worked out from its
+ * counts when first read, so those of a filtered list are of the words it
+ * kept.
+ */
+public class FrequencyList implements Lines {
+
+	public static final String SUFFIX = ".sfl";
+
+	private static final int MAGIC = 0x53464C31;
+	private static final int HEADER_SIZE = 32;
+	private static final int BLOCK_SIZE = 16;
+	private static final int WITH_STATS = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer data;
+	private final IntBuffer counts;
+	private final IntBuffer ranks;
+	private final IntBuffer sortedPositions;
+	private final IntBuffer entries;
+	private final IntBuffer blockOffsets;
+	private final int wordsOffset;
+	private final int size;
+	private final boolean withStats;
+	private final long tokens;
+	private long[] covered;
+	private List<String> summary;
+
+	private FrequencyList(ByteBuffer data) throws IOException {
+		this.data = data;
+		if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC)
+			throw new IOException("Not a frequency list");
+		withStats = (data.getInt(4) & WITH_STATS) != 0;
+		size = data.getInt(8);
+		tokens = data.getLong(16);
+		wordsOffset = data.getInt(24);
+		int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int length = data.getInt(28);
+		if (size < 0 || wordsOffset != HEADER_SIZE + 16L * size + 4L * blocks || wordsOffset > data.capacity()
+				|| (length != 0 && length != data.capacity()))
+			throw new IOException("Truncated frequency list");
+		counts = slice(HEADER_SIZE, size);
+		ranks = slice(HEADER_SIZE + 4 * size, size);
+		sortedPositions = slice(HEADER_SIZE + 8 * size, size);
+		entries = slice(HEADER_SIZE + 12 * size, size);
+		blockOffsets = slice(HEADER_SIZE + 16 * size, blocks);
+	}
+
+	public static FrequencyList open(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("'" + file + "' is too large for a frequency list");
+			return new FrequencyList(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			in.close();
+		}
+	}
+
+	public static boolean isFrequencyList(File file) throws IOException {
+		if (file.length() < HEADER_SIZE)
+			return false;
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] magic = new byte[4];
+			return in.read(magic) == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the entries in the given order; ranks are kept as given, so a
+	 * filtered list keeps the ranks of the list it was filtered from.
+	 */
+	public static void write(File file, String[] words, int[] counts, int[] ranks, int size, boolean withStats)
+			throws IOException {
+		byte[][] bytes = new byte[size][];
+		int[] order = new int[size];
+		long tokens = 0;
+		for (int i = 0; i < size; i++) {
+			bytes[i] = words[i].getBytes(UTF8);
+			order[i] = i;
+			tokens += counts[i];
+		}
+		sort(order, new int[size], 0, size, bytes);
+
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int[] blockOffsets = new int[blocks];
+		int[] sortedPositions = new int[size];
+		byte[] previous = null;
+		for (int s = 0; s < size; s++) {
+			byte[] word = bytes[order[s]];
+			sortedPositions[order[s]] = s;
+			int shared = 0;
+			if (s % BLOCK_SIZE == 0) {
+				blockOffsets[s / BLOCK_SIZE] = encoded.size();
+			} else {
+				int max = Math.min(previous.length, word.length);
+				while (shared < max && previous[shared] == word[shared])
+					shared++;
+			}
+			writeVarint(encoded, shared);
+			writeVarint(encoded, word.length - shared);
+			encoded.write(word, shared, word.length - shared);
+			previous = word;
+		}
+
+		long wordsOffset = HEADER_SIZE + 16L * size + 4L * blocks;
+		if (wordsOffset + encoded.size() > Integer.MAX_VALUE)
+			throw new IOException("Too many words for a frequency list");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(withStats ? WITH_STATS : 0);
+			out.writeInt(size);
+			out.writeInt(BLOCK_SIZE);
+			out.writeLong(tokens);
+			out.writeInt((int) wordsOffset);
+			out.writeInt((int) (wordsOffset + encoded.size()));
+			for (int i = 0; i < size; i++)
+				out.writeInt(counts[i]);
+			for (int i = 0; i < size; i++)
+				out.writeInt(ranks[i]);
+			for (int i = 0; i < size; i++)
+				out.writeInt(sortedPositions[i]);
+			for (int s = 0; s < size; s++)
+				out.writeInt(order[s]);
+			for (int offset : blockOffsets)
+				out.writeInt(offset);
+			encoded.writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isWithStats() {
+		return withStats;
+	}
+
+	/**
+	 * Returns the sum of the counts of all entries.
+	 */
+	public long tokens() {
+		return tokens;
+	}
+
+	public int count(int entry) {
+		return counts.get(entry);
+	}
+
+	public int rank(int entry) {
+		return ranks.get(entry);
+	}
+
+	public String word(int entry) {
+		return new String(sortedWord(sortedPositions.get(entry)), UTF8);
+	}
+
+	/**
+	 * Returns the entry of the word, or -1 if the list does not contain it.
+	 */
+	public int find(String word) {
+		byte[] key = word.getBytes(UTF8);
+		int low = 0;
+		int high = blockOffsets.capacity() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int c = compareBytes(sortedWord(middle * BLOCK_SIZE), key);
+			if (c < 0)
+				low = middle + 1;
+			else if (c > 0)
+				high = middle - 1;
+			else
+				return entries.get(middle * BLOCK_SIZE);
+		}
+		if (high < 0)
+			return -1;
+		int first = high * BLOCK_SIZE;
+		int last = Math.min(size, first + BLOCK_SIZE);
+		BlockReader block = new BlockReader(high);
+		for (int s = first; s < last; s++) {
+			int c = compareBytes(block.next(), key);
+			if (c == 0)
+				return entries.get(s);
+			if (c > 0)
+				break;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the text of the entry, or of a summary line past the last
+	 * entry.
+	 */
+	public String line(int entry) {
+		if (!withStats)
+			return word(entry);
+		computeStats();
+		if (entry >= size)
+			return summary.get(entry - size);
+		return Ranking.line(rank(entry), word(entry), count(entry), covered[entry], tokens);
+	}
+
+	public long lineCount() {
+		if (!withStats)
+			return size;
+		computeStats();
+		return size + summary.size();
+	}
+
+	public List<String> readLines(long firstLine, int count) {
+		long lineCount = lineCount();
+		List<String> lines = new ArrayList<String>(count);
+		for (long i = firstLine; i < lineCount && lines.size() < count; i++)
+			lines.add(line((int) i));
+		return lines;
+	}
+
+	/**
+	 * Returns the list as the bytes of a text file of it, in the platform
+	 * charset like other text the tagger reads.
+	 */
+	public InputStream stream() {
+		return new InputStream() {
+			private final long lineCount = lineCount();
+			private final Charset charset = Charset.defaultCharset();
+			private int entry;
+			private byte[] current = new byte[0];
+			private int position;
+
+			public int read() {
+				byte[] one = new byte[1];
+				return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+			}
+
+			public int read(byte[] buffer, int offset, int length) {
+				if (length == 0)
+					return 0;
+				int read = 0;
+				while (read < length) {
+					if (position == current.length) {
+						if (entry == lineCount)
+							break;
+						current = (line(entry++) + "\n").getBytes(charset);
+						position = 0;
+					}
+					int n = Math.min(length - read, current.length - position);
+					System.arraycopy(current, position, buffer, offset + read, n);
+					position += n;
+					read += n;
+				}
+				return read == 0 ? -1 : read;
+			}
+		};
+	}
+
+	/**
+	 * Returns the list as text, one entry per line.
+	 */
+	public Reader reader() {
+		return new Reader() {
+			private final long lineCount = lineCount();
+			private int entry;
+			private String current = "";
+			private int position;
+
+			public int read(char[] buffer, int offset, int length) {
+				if (length == 0)
+					return 0;
+				int read = 0;
+				while (read < length) {
+					if (position == current.length()) {
+						if (entry == lineCount)
+							break;
+						current = line(entry++) + "\n";
+						position = 0;
+					}
+					int n = Math.min(length - read, current.length() - position);
+					current.getChars(position, position + n, buffer, offset + read);
+					position += n;
+					read += n;
+				}
+				return read == 0 ? -1 : read;
+			}
+
+			public void close() {
+			}
+		};
+	}
+
+	private synchronized void computeStats() {
+		if (summary != null)
+			return;
+		covered = new long[size];
+		long sum = 0;
+		int hapaxLegomena = 0;
+		int disLegomena = 0;
+		for (int entry = 0; entry < size; entry++) {
+			int count = count(entry);
+			sum += count;
+			covered[entry] = sum;
+			if (count == 1)
+				hapaxLegomena++;
+			else if (count == 2)
+				disLegomena++;
+		}
+		summary = Ranking.summary(size, tokens, hapaxLegomena, disLegomena);
+	}
+
+	private byte[] sortedWord(int sortedPosition) {
+		BlockReader block = new BlockReader(sortedPosition / BLOCK_SIZE);
+		byte[] word = null;
+		for (int i = sortedPosition % BLOCK_SIZE; i >= 0; i--)
+			word = block.next();
+		return word;
+	}
+
+	private IntBuffer slice(int offset, int length) {
+		ByteBuffer slice = data.duplicate();
+		slice.position(offset);
+		slice.limit(offset + 4 * length);
+		return slice.slice().asIntBuffer();
+	}
+
+	private class BlockReader {
+		private int position;
+		private byte[] word = new byte[0];
+
+		BlockReader(int block) {
+			position = wordsOffset + blockOffsets.get(block);
+		}
+
+		byte[] next() {
+			int shared = readVarint();
+			int suffix = readVarint();
+			byte[] next = Arrays.copyOf(word, shared + suffix);
+			for (int i = 0; i < suffix; i++)
+				next[shared + i] = data.get(position++);
+			word = next;
+			return next;
+		}
+
+		private int readVarint() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data.get(position++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+	}
+
+	/**
+	 * Merge sorts entry numbers by the bytes of their words, stable so that
+	 * equal words keep list order.
+	 */
+	private static void sort(int[] order, int[] buffer, int from, int to, byte[][] bytes) {
+		if (to - from < 2)
+			return;
+		int middle = (from + to) >>> 1;
+		sort(order, buffer, from, middle, bytes);
+		sort(order, buffer, middle, to, bytes);
+		System.arraycopy(order, from, buffer, from, to - from);
+		int left = from, right = middle;
+		for (int i = from; i < to; i++) {
+			if (right == to || (left < middle && compareBytes(bytes[buffer[left]], bytes[buffer[right]]) <= 0))
+				order[i] = buffer[left++];
+			else
+				order[i] = buffer[right++];
+		}
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (c != 0)
+				return c;
+		}
+		return a.length - b.length;
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+}
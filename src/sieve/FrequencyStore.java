@@ -0,0 +1,249 @@
+package sieve;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Lemma counts of a corpus kept in a file next to it, together with the
+ * number of bytes at its start they were counted from. When text is appended
+ * to the corpus only the bytes after those need to be tagged and counted.
+ * <p>
+ * Checking that the corpus still starts with the counted bytes costs no
+ * more than reading two windows of {@value #WINDOW} bytes: if its size and
+ * modification time are those it had when the counts were saved it is taken
+ * as unchanged, otherwise the SHA-256 hash of the first and last window of
+ * the counted bytes must still match. An edit elsewhere in the counted bytes
+ * of a corpus that was also appended to goes unnoticed. If the counted bytes
+ * have changed, or the corpus was counted with another tagger, the store
+ * starts over from an empty one.
+ */
+public class FrequencyStore {
+
+	public static final String SUFFIX = ".counts";
+
+	private static final int MAGIC = 0x53465332;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int WINDOW = 1 << 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final File corpus;
+	private final String taggerKey;
+	private long counted;
+	private long modified;
+	private byte[] fingerprint;
+	private boolean endsWithLineBreak = true;
+	private WordCounter counter = new WordCounter();
+	private long pendingLength;
+	private boolean pendingEndsWithLineBreak;
+
+	private FrequencyStore(File corpus, String taggerKey) {
+		this.file = new File(corpus.getPath() + SUFFIX);
+		this.corpus = corpus;
+		this.taggerKey = taggerKey;
+	}
+
+	/**
+	 * Opens the store of the corpus, or an empty one if there is none or it
+	 * cannot be used with the tagger.
+	 */
+	public static FrequencyStore open(File corpus, Tagger tagger) {
+		FrequencyStore store = new FrequencyStore(corpus, tagger.getLanguage() + "\0" + tagger.getPath());
+		if (store.file.exists()) {
+			try {
+				store.load();
+			} catch (IOException e) {
+				store.reset();
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Checks the counted bytes against the corpus and returns their number.
+	 * Returns 0 and empties the store if the corpus does not start with them
+	 * anymore.
+	 */
+	public long verify() throws IOException {
+		if (counted == 0)
+			return 0;
+		long length = corpus.length();
+		if (length == counted && corpus.lastModified() == modified)
+			return counted;
+		if (length < counted || (length > counted && !endsWithLineBreak)
+				|| !Arrays.equals(fingerprint(counted), fingerprint)) {
+			reset();
+			return 0;
+		}
+		return counted;
+	}
+
+	/**
+	 * Copies the bytes of the corpus after the counted ones to a temporary
+	 * file, which the caller tags and deletes. The copied bytes count as
+	 * counted once their counts are added.
+	 */
+	public File copyNewText(long from) throws IOException {
+		File copy = File.createTempFile("sieve", ".tmp");
+		InputStream in = new FileInputStream(corpus);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(copy));
+		long length = 0;
+		int last = '\n';
+		try {
+			long skipped = 0;
+			while (skipped < from) {
+				long n = in.skip(from - skipped);
+				if (n <= 0)
+					throw new IOException("'" + corpus + "' changed while being read");
+				skipped += n;
+			}
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+				length += n;
+				last = buffer[n - 1];
+			}
+		} catch (IOException e) {
+			out.close();
+			copy.delete();
+			throw e;
+		} finally {
+			in.close();
+			out.close();
+		}
+		pendingLength = length;
+		pendingEndsWithLineBreak = last == '\n' || last == '\r';
+		return copy;
+	}
+
+	/**
+	 * Adds the counts of the copied text. Its words keep their order of first
+	 * appearance after all the words counted before.
+	 */
+	public void add(WordCounter newText) {
+		long base = counter.tokens();
+		for (int id = 0; id < newText.size(); id++)
+			counter.add(newText.word(id), newText.count(id), base + newText.firstSeen(id));
+		if (pendingLength > 0) {
+			counted += pendingLength;
+			endsWithLineBreak = pendingEndsWithLineBreak;
+			pendingLength = 0;
+		}
+	}
+
+	public WordCounter getCounter() {
+		return counter;
+	}
+
+	/**
+	 * Writes the store, with the fingerprint of the counted bytes as the
+	 * corpus has them now.
+	 */
+	public void save() throws IOException {
+		fingerprint = fingerprint(counted);
+		modified = corpus.length() == counted ? corpus.lastModified() : 0;
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeUTF(taggerKey);
+			out.writeBoolean(endsWithLineBreak);
+			out.writeLong(counted);
+			out.writeLong(modified);
+			out.write(fingerprint);
+			out.writeInt(counter.size());
+			for (int id : counter.appearanceOrder()) {
+				counter.writeWord(id, out);
+				out.writeInt(counter.count(id));
+				out.writeLong(counter.firstSeen(id));
+			}
+		} finally {
+			out.close();
+		}
+		file.delete();
+		if (!tmp.renameTo(file))
+			throw new IOException("Could not save counts to '" + file + "'");
+	}
+
+	private void load() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || !in.readUTF().equals(taggerKey))
+				return;
+			endsWithLineBreak = in.readBoolean();
+			counted = in.readLong();
+			modified = in.readLong();
+			fingerprint = new byte[32];
+			in.readFully(fingerprint);
+			int size = in.readInt();
+			counter = new WordCounter(size);
+			byte[] word = new byte[64];
+			for (int i = 0; i < size; i++) {
+				int length = in.readInt();
+				if (length > word.length)
+					word = new byte[Math.max(length, word.length * 2)];
+				in.readFully(word, 0, length);
+				counter.add(new String(word, 0, length, UTF8), in.readInt(), in.readLong());
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void reset() {
+		counted = 0;
+		modified = 0;
+		fingerprint = null;
+		endsWithLineBreak = true;
+		counter = new WordCounter();
+	}
+
+	/**
+	 * Hashes the first and the last {@value #WINDOW} bytes of the given
+	 * number at the start of the corpus, and the number itself.
+	 */
+	private byte[] fingerprint(long length) throws IOException {
+		MessageDigest digest = sha256();
+		RandomAccessFile in = new RandomAccessFile(corpus, "r");
+		try {
+			byte[] buffer = new byte[(int) Math.min(WINDOW, length)];
+			in.readFully(buffer);
+			digest.update(buffer);
+			long tail = Math.max(buffer.length, length - WINDOW);
+			in.seek(tail);
+			buffer = new byte[(int) (length - tail)];
+			in.readFully(buffer);
+			digest.update(buffer);
+		} catch (EOFException e) {
+			return new byte[32];
+		} finally {
+			in.close();
+		}
+		for (int shift = 56; shift >= 0; shift -= 8)
+			digest.update((byte) (length >>> shift));
+		return digest.digest();
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package sieve;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Opens files that may hold text, compressed text or a binary
+ * {@link FrequencyList}, so that code reading lines does not need to care
+ * which one it gets.
+ */
+public class Inputs {
+
+	private Inputs() {
+	}
+
+	public static BufferedReader openReader(File file) throws IOException {
+		if (FrequencyList.isFrequencyList(file))
+			return new BufferedReader(FrequencyList.open(file).reader());
+		return new BufferedReader(new InputStreamReader(Compression.open(file)), 1 << 16);
+	}
+
+	/**
+	 * Like {@link #openReader(File)}, counting the bytes read from a text file
+	 * as progress of the job, before they are decompressed.
+	 */
+	public static BufferedReader openReader(File file, Metrics metrics) throws IOException {
+		if (FrequencyList.isFrequencyList(file))
+			return new BufferedReader(FrequencyList.open(file).reader());
+		return new BufferedReader(new InputStreamReader(Compression.open(metrics.track(file))), 1 << 16);
+	}
+
+	/**
+	 * Opens the bytes of a text file, decompressing them or writing a
+	 * {@link FrequencyList} out as text, for code that passes text on
+	 * without reading its lines.
+	 */
+	public static InputStream openStream(File file) throws IOException {
+		if (FrequencyList.isFrequencyList(file))
+			return FrequencyList.open(file).stream();
+		return Compression.open(file);
+	}
+
+	/**
+	 * Like {@link #openStream(File)}, counting the bytes read from a text
+	 * file as progress of the job, before they are decompressed.
+	 */
+	public static InputStream openStream(File file, Metrics metrics) throws IOException {
+		if (FrequencyList.isFrequencyList(file))
+			return FrequencyList.open(file).stream();
+		return Compression.open(metrics.track(file));
+	}
+
+	/**
+	 * Returns true if the file holds anything but plain text, so it has to be
+	 * opened through {@link #openStream} rather than read as is.
+	 */
+	public static boolean isEncoded(File file) throws IOException {
+		return Compression.isCompressed(file) || FrequencyList.isFrequencyList(file);
+	}
+
+	public static Lines index(File file, Cancellable cancellable) throws IOException {
+		if (FrequencyList.isFrequencyList(file))
+			return FrequencyList.open(file);
+		if (Compression.isCompressed(file))
+			return CompressedLines.count(file, cancellable);
+		return LineIndex.build(file, cancellable);
+	}
+
+	/**
+	 * Lines of a compressed file. Gzip written in BGZF blocks, as the sieve
+	 * writes it, is indexed like a {@link LineIndex}: for every
+	 * {@value LineIndex#STEP}th line the block it starts in and its position
+	 * in the data of the block are kept, so that a page is read from the
+	 * nearest of them. Other compressed files cannot be read from the middle;
+	 * their lines are only counted and every page is read from the start.
+	 */
+	private static class CompressedLines implements Lines {
+		private final File file;
+		private long[] blockOffsets;
+		private int[] blockPositions;
+		private long lineCount;
+
+		private CompressedLines(File file) {
+			this.file = file;
+		}
+
+		static CompressedLines count(File file, Cancellable cancellable) throws IOException {
+			CompressedLines lines = new CompressedLines(file);
+			if (Compression.isBgzf(file)) {
+				lines.index(cancellable);
+				return lines;
+			}
+			BufferedReader in = openReader(file);
+			try {
+				while (in.readLine() != null && !cancellable.isCancelled())
+					lines.lineCount++;
+			} finally {
+				in.close();
+			}
+			return lines;
+		}
+
+		public long lineCount() {
+			return lineCount;
+		}
+
+		public List<String> readLines(long firstLine, int count) throws IOException {
+			List<String> lines = new ArrayList<String>(count);
+			if (firstLine >= lineCount)
+				return lines;
+			InputStream stream;
+			long skip = firstLine;
+			if (blockOffsets != null) {
+				int slot = (int) (firstLine / LineIndex.STEP);
+				stream = Compression.openBgzf(file, blockOffsets[slot]);
+				skip = firstLine % LineIndex.STEP;
+				try {
+					skipBytes(stream, blockPositions[slot]);
+				} catch (IOException e) {
+					stream.close();
+					throw e;
+				}
+			} else {
+				stream = Compression.open(file);
+			}
+			BufferedReader in = new BufferedReader(new InputStreamReader(stream), 1 << 16);
+			try {
+				for (; skip > 0 && in.readLine() != null; skip--) {
+				}
+				String line;
+				while (lines.size() < count && (line = in.readLine()) != null)
+					lines.add(line);
+			} finally {
+				in.close();
+			}
+			return lines;
+		}
+
+		/**
+		 * Counts the lines the way {@link LineIndex} does, keeping where in
+		 * the blocks every {@value LineIndex#STEP}th of them starts.
+		 */
+		private void index(Cancellable cancellable) throws IOException {
+			blockOffsets = new long[16];
+			blockPositions = new int[16];
+			Compression.BgzfInputStream in = Compression.openBgzf(file, 0);
+			try {
+				byte[] buffer = new byte[1 << 16];
+				boolean lineOpen = false;
+				boolean afterCarriageReturn = false;
+				int n;
+				while ((n = in.read(buffer)) > 0 && !cancellable.isCancelled()) {
+					// the bytes read all come from one block
+					int start = in.blockPosition() - n;
+					for (int i = 0; i < n; i++) {
+						byte b = buffer[i];
+						if (b == '\n' && afterCarriageReturn) {
+							afterCarriageReturn = false;
+							continue;
+						}
+						if (!lineOpen) {
+							addLine(in.blockOffset(), start + i);
+							lineOpen = true;
+						}
+						afterCarriageReturn = b == '\r';
+						if (b == '\n' || b == '\r')
+							lineOpen = false;
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		private void addLine(long blockOffset, int blockPosition) {
+			if (lineCount % LineIndex.STEP == 0) {
+				int slot = (int) (lineCount / LineIndex.STEP);
+				if (slot == blockOffsets.length) {
+					blockOffsets = Arrays.copyOf(blockOffsets, slot * 2);
+					blockPositions = Arrays.copyOf(blockPositions, slot * 2);
+				}
+				blockOffsets[slot] = blockOffset;
+				blockPositions[slot] = blockPosition;
+			}
+			lineCount++;
+		}
+
+		private static void skipBytes(InputStream in, int count) throws IOException {
+			byte[] buffer = new byte[Math.min(count, 1 << 16)];
+			while (count > 0) {
+				int n = in.read(buffer, 0, Math.min(count, buffer.length));
+				if (n < 0)
+					throw new EOFException("Compressed file ended before an indexed line");
+				count -= n;
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package sieve;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * One run of an action or pipeline: its cancellation flag and its metrics.
+ * Processes, tasks and streams the run depends on are registered with the job
+ * so that cancelling it stops them at once instead of waiting for the next
+ * check of the flag.
+ */
+public class Job implements Cancellable {
+
+	private final Metrics metrics;
+	private final List<Closeable> resources = new ArrayList<Closeable>();
+	private volatile boolean cancelled;
+
+	public Job(String name) {
+		metrics = new Metrics(name);
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public void cancel() {
+		List<Closeable> toClose;
+		synchronized (this) {
+			if (cancelled)
+				return;
+			cancelled = true;
+			toClose = new ArrayList<Closeable>(resources);
+			resources.clear();
+		}
+		for (Closeable resource : toClose)
+			closeQuietly(resource);
+	}
+
+	/**
+	 * Registers a resource to be closed when the job is cancelled; it is
+	 * closed right away if the job already is.
+	 */
+	public Closeable register(Closeable resource) {
+		synchronized (this) {
+			if (!cancelled) {
+				resources.add(resource);
+				return resource;
+			}
+		}
+		closeQuietly(resource);
+		return resource;
+	}
+
+	public Closeable register(final Process process) {
+		return register(new Closeable() {
+			public void close() {
+				Tagger.destroy(process);
+			}
+		});
+	}
+
+	public Closeable register(final Future<?> task) {
+		return register(new Closeable() {
+			public void close() {
+				task.cancel(true);
+			}
+		});
+	}
+
+	public synchronized void unregister(Closeable resource) {
+		resources.remove(resource);
+	}
+
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	private static void closeQuietly(Closeable resource) {
+		try {
+			resource.close();
+		} catch (IOException e) {
+		}
+	}
+}
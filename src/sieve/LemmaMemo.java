@@ -0,0 +1,464 @@
+package sieve;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tagger output remembered per whitespace-separated token of the text, kept
+ * per language in a file under {@value #DIRECTORY}. When a file is tagged
+ * with the memo, lines whose tokens are all remembered are filled in from it
+ * and only the other lines go through the tagger, in their context. What the
+ * tagger makes of those lines is remembered for the next runs.
+ * <p>
+ * A token the tagger analyzed in different ways in different contexts is
+ * filled in only if its most frequent analysis makes up at least the
+ * confidence share of what was seen; lower confidence skips the tagger more
+ * often at the cost of context-sensitive lemmas.
+ * <p>
+ * Lines sent to the tagger are separated by a marker line that the tagger
+ * is expected to pass through as a token of its own; tagging fails if the
+ * markers do not all come back. What a run learns is appended to the memo
+ * file, which is rewritten only once superseded records make up half of it.
+ */
+public class LemmaMemo {
+
+	public static final String DIRECTORY = "cache/lemmas";
+
+	private static final String SUFFIX = ".memo";
+	private static final int MAGIC = 0x534C4D33;
+	private static final int MAX_ANALYSES = 4;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String LINE_END = "<sieve-line/>";
+	private static final Map<File, Store> stores = new HashMap<File, Store>();
+
+	private final Store store;
+	private final double confidence;
+
+	private LemmaMemo(Store store, double confidence) {
+		this.store = store;
+		this.confidence = confidence;
+	}
+
+	/**
+	 * Opens the memo of the tagger's language. Memos are shared by all jobs
+	 * of the process; one made with another tagger starts over empty.
+	 */
+	public static LemmaMemo open(File directory, Tagger tagger, double confidence) {
+		File file = new File(directory, tagger.getLanguage() + SUFFIX);
+		String taggerKey = tagger.getLanguage() + "\0" + tagger.getPath();
+		Store store;
+		synchronized (stores) {
+			store = stores.get(file);
+			if (store == null || !store.taggerKey.equals(taggerKey)) {
+				store = new Store(file, taggerKey);
+				try {
+					store.load();
+				} catch (IOException e) {
+					store.entries.clear();
+					store.rewrite = true;
+				}
+				stores.put(file, store);
+			}
+		}
+		return new LemmaMemo(store, confidence);
+	}
+
+	/**
+	 * Drops the memos read so far, so that they are read from their files
+	 * again when next opened.
+	 */
+	static void forget() {
+		synchronized (stores) {
+			stores.clear();
+		}
+	}
+
+	/**
+	 * Passes tagger output for every line of the input to the sink, in input
+	 * order, tagging only the lines with tokens the memo cannot fill in.
+	 * Returns false if the job was cancelled.
+	 */
+	public boolean tag(File input, Tagger tagger, LineSink output, Job job) throws Exception {
+		Metrics metrics = job.getMetrics();
+		BitSet tagged = new BitSet();
+		File spool = File.createTempFile("sieve", ".tmp");
+		File taggerOutput = File.createTempFile("sieve", ".tmp");
+		try {
+			BufferedReader in = Inputs.openReader(input, metrics);
+			PrintWriter out = new PrintWriter(new FileWriter(spool));
+			try {
+				String line;
+				for (int i = 0; (line = in.readLine()) != null && !job.isCancelled(); i++) {
+					if (!isKnown(line)) {
+						tagged.set(i);
+						out.println(line);
+						out.println(LINE_END);
+					}
+				}
+			} finally {
+				in.close();
+				out.close();
+			}
+			if (job.isCancelled())
+				return false;
+
+			if (!tagged.isEmpty()) {
+				TaggedLines taggedOut = new TaggedLines(taggerOutput);
+				boolean succeeded;
+				try {
+					succeeded = Sieve.tag(spool, tagger, taggedOut, job);
+				} finally {
+					taggedOut.close();
+				}
+				if (!succeeded || job.isCancelled())
+					return false;
+				if (taggedOut.lines != tagged.cardinality())
+					throw new IOException("The tagger returned " + taggedOut.lines + " of " + tagged.cardinality()
+							+ " line markers '" + LINE_END + "'; tag without remembering lemmas");
+			}
+
+			Map<String, Map<String, Integer>> seen = new HashMap<String, Map<String, Integer>>();
+			in = Inputs.openReader(input);
+			BufferedReader taggerIn = new BufferedReader(new FileReader(taggerOutput));
+			try {
+				TaggerOutput parser = new TaggerOutput();
+				List<String> lineOutput = new ArrayList<String>();
+				String line;
+				for (int i = 0; (line = in.readLine()) != null && !job.isCancelled(); i++) {
+					if (tagged.get(i)) {
+						lineOutput.clear();
+						String taggedLine;
+						while ((taggedLine = taggerIn.readLine()) != null && !taggedLine.equals(LINE_END))
+							lineOutput.add(taggedLine);
+						for (String outputLine : lineOutput)
+							output.line(outputLine);
+						observe(line, lineOutput, parser, seen);
+					} else {
+						int filled = 0;
+						for (String token : tokens(line)) {
+							String[] best = store.entries.get(token).best();
+							for (String outputLine : best)
+								output.line(outputLine);
+							filled += best.length;
+						}
+						metrics.addProgress(0, filled);
+					}
+				}
+			} finally {
+				in.close();
+				taggerIn.close();
+			}
+			if (!job.isCancelled() && !seen.isEmpty())
+				store.learn(seen);
+			return !job.isCancelled();
+		} finally {
+			spool.delete();
+			taggerOutput.delete();
+		}
+	}
+
+	private boolean isKnown(String line) {
+		for (String token : tokens(line)) {
+			Entry entry = store.entries.get(token);
+			if (entry == null || entry.bestCount < confidence * entry.total)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Splits the tagger output of a line among the tokens of the line by
+	 * matching the words of the output against the tokens. Stops at the first
+	 * token the words do not spell out, as the tagger rewrote something.
+	 */
+	private static void observe(String line, List<String> lineOutput, TaggerOutput parser,
+			Map<String, Map<String, Integer>> seen) {
+		int next = 0;
+		for (String token : tokens(line)) {
+			StringBuilder words = new StringBuilder();
+			StringBuilder analysis = new StringBuilder();
+			while (next < lineOutput.size() && words.length() < token.length()) {
+				String outputLine = lineOutput.get(next++);
+				parser.parse(outputLine);
+				words.append(outputLine, 0, parser.wordEnd());
+				if (analysis.length() > 0)
+					analysis.append('\n');
+				analysis.append(outputLine);
+			}
+			if (!token.contentEquals(words))
+				return;
+			Map<String, Integer> analyses = seen.get(token);
+			if (analyses == null) {
+				analyses = new HashMap<String, Integer>();
+				seen.put(token, analyses);
+			}
+			Integer count = analyses.get(analysis.toString());
+			analyses.put(analysis.toString(), count == null ? 1 : count + 1);
+		}
+	}
+
+	private static List<String> tokens(String line) {
+		List<String> tokens = new ArrayList<String>();
+		int start = -1;
+		for (int i = 0; i <= line.length(); i++) {
+			boolean space = i == line.length() || Character.isWhitespace(line.charAt(i));
+			if (space && start >= 0) {
+				tokens.add(line.substring(start, i));
+				start = -1;
+			} else if (!space && start < 0) {
+				start = i;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Spools tagger output to a file, counting the line markers in it.
+	 */
+	private static class TaggedLines implements LineSink {
+		private final PrintWriter out;
+		int lines;
+
+		TaggedLines(File file) throws IOException {
+			out = new PrintWriter(new FileWriter(file));
+		}
+
+		public void line(String line) {
+			out.println(line);
+			if (line.equals(LINE_END))
+				lines++;
+		}
+
+		public void close() {
+			out.close();
+		}
+	}
+
+	/**
+	 * Up to {@value #MAX_ANALYSES} analyses of a token, most frequent first,
+	 * each as the tagger output lines the token was tagged as. The total also
+	 * counts analyses that were dropped for less frequent ones.
+	 */
+	private static class Entry {
+		final String[] analyses;
+		final int[] counts;
+		final int bestCount;
+		final int total;
+		private String[] bestLines;
+
+		Entry(String[] analyses, int[] counts, int total) {
+			this.analyses = analyses;
+			this.counts = counts;
+			this.bestCount = counts[0];
+			this.total = total;
+		}
+
+		String[] best() {
+			if (bestLines == null)
+				bestLines = analyses[0].split("\n");
+			return bestLines;
+		}
+
+		Entry plus(Map<String, Integer> seen) {
+			Map<String, Integer> merged = new HashMap<String, Integer>(seen);
+			int added = 0;
+			for (int count : seen.values())
+				added += count;
+			for (int i = 0; i < analyses.length; i++) {
+				Integer count = merged.get(analyses[i]);
+				merged.put(analyses[i], count == null ? counts[i] : count + counts[i]);
+			}
+			return of(merged, total + added);
+		}
+
+		static Entry of(Map<String, Integer> analyses, int total) {
+			List<Map.Entry<String, Integer>> sorted = new ArrayList<Map.Entry<String, Integer>>(analyses.entrySet());
+			Collections.sort(sorted, new Comparator<Map.Entry<String, Integer>>() {
+				public int compare(Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2) {
+					return e2.getValue() - e1.getValue();
+				}
+			});
+			int n = Math.min(MAX_ANALYSES, sorted.size());
+			String[] kept = new String[n];
+			int[] counts = new int[n];
+			for (int i = 0; i < n; i++) {
+				kept[i] = sorted.get(i).getKey();
+				counts[i] = sorted.get(i).getValue();
+			}
+			return new Entry(kept, counts, total);
+		}
+	}
+
+	private static class Store {
+		final File file;
+		final String taggerKey;
+		final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+		boolean rewrite = true;
+		private int records;
+
+		Store(File file, String taggerKey) {
+			this.file = file;
+			this.taggerKey = taggerKey;
+		}
+
+		synchronized void learn(Map<String, Map<String, Integer>> seen) throws IOException {
+			for (Map.Entry<String, Map<String, Integer>> token : seen.entrySet()) {
+				Entry entry = entries.get(token.getKey());
+				if (entry == null) {
+					int total = 0;
+					for (int count : token.getValue().values())
+						total += count;
+					entries.put(token.getKey(), Entry.of(token.getValue(), total));
+				} else {
+					entries.put(token.getKey(), entry.plus(token.getValue()));
+				}
+			}
+			if (rewrite || !file.exists() || records + seen.size() > 2 * entries.size())
+				save();
+			else
+				append(seen.keySet());
+		}
+
+		/**
+		 * Reads the records of the memo; a later record of a token replaces
+		 * an earlier one. A record cut short by a run that did not finish
+		 * appending ends the memo, and the records before it are kept.
+		 */
+		void load() throws IOException {
+			if (!file.exists())
+				return;
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			try {
+				if (in.readInt() != MAGIC || !in.readUTF().equals(taggerKey))
+					return;
+				byte[] record = new byte[256];
+				boolean truncated = false;
+				while (true) {
+					int length;
+					try {
+						int first = in.read();
+						if (first < 0)
+							break;
+						length = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8
+								| in.readUnsignedByte();
+						if (length < 0)
+							throw new EOFException();
+						if (length > record.length)
+							record = new byte[Math.max(length, record.length * 2)];
+						in.readFully(record, 0, length);
+					} catch (EOFException e) {
+						truncated = true;
+						break;
+					}
+					DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record, 0, length));
+					String token = readString(fields);
+					int total = fields.readInt();
+					String[] analyses = new String[fields.readInt()];
+					int[] counts = new int[analyses.length];
+					for (int j = 0; j < analyses.length; j++) {
+						analyses[j] = readString(fields);
+						counts[j] = fields.readInt();
+					}
+					entries.put(token, new Entry(analyses, counts, total));
+					records++;
+				}
+				rewrite = truncated;
+			} finally {
+				in.close();
+			}
+		}
+
+		private void append(Collection<String> tokens) throws IOException {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true),
+					1 << 16));
+			boolean appended = false;
+			try {
+				ByteArrayOutputStream record = new ByteArrayOutputStream();
+				for (String token : tokens)
+					write(out, record, token, entries.get(token));
+				out.flush();
+				appended = true;
+			} finally {
+				// records appended after a torn one would be lost
+				if (!appended)
+					rewrite = true;
+				out.close();
+			}
+			records += tokens.size();
+		}
+
+		private void save() throws IOException {
+			file.getParentFile().mkdirs();
+			File tmp = new File(file.getPath() + ".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeUTF(taggerKey);
+				ByteArrayOutputStream record = new ByteArrayOutputStream();
+				for (Map.Entry<String, Entry> token : entries.entrySet())
+					write(out, record, token.getKey(), token.getValue());
+			} finally {
+				out.close();
+			}
+			file.delete();
+			if (!tmp.renameTo(file))
+				throw new IOException("Could not save remembered lemmas to '" + file + "'");
+			records = entries.size();
+			rewrite = false;
+		}
+
+		/**
+		 * Writes a record as its length followed by the token, the total and
+		 * the analyses with their counts, strings as length-prefixed UTF-8.
+		 */
+		private static void write(DataOutputStream out, ByteArrayOutputStream record, String token, Entry entry)
+				throws IOException {
+			record.reset();
+			DataOutputStream fields = new DataOutputStream(record);
+			writeString(fields, token);
+			fields.writeInt(entry.total);
+			fields.writeInt(entry.analyses.length);
+			for (int i = 0; i < entry.analyses.length; i++) {
+				writeString(fields, entry.analyses[i]);
+				fields.writeInt(entry.counts[i]);
+			}
+			out.writeInt(record.size());
+			record.writeTo(out);
+		}
+
+		private static void writeString(DataOutputStream out, String s) throws IOException {
+			byte[] bytes = s.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, UTF8);
+		}
+	}
+}
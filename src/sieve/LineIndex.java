@@ -0,0 +1,106 @@
+package sieve;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse index of line start offsets of a text file, one offset for every
+ * {@value #STEP} lines. Reading lines anywhere in the file costs a seek plus
+ * skipping fewer than {@value #STEP} lines, whatever the size of the file.
+ * Lines end the same way as for {@link BufferedReader#readLine()}.
+ */
+public class LineIndex implements Lines {
+
+	public static final int STEP = 1024;
+
+	private final File file;
+	private long[] offsets;
+	private long lineCount;
+
+	private LineIndex(File file) {
+		this.file = file;
+		offsets = new long[16];
+	}
+
+	public static LineIndex build(File file, Cancellable cancellable) throws IOException {
+		LineIndex index = new LineIndex(file);
+		index.scan(cancellable);
+		return index;
+	}
+
+	public long lineCount() {
+		return lineCount;
+	}
+
+	public List<String> readLines(long firstLine, int count) throws IOException {
+		List<String> lines = new ArrayList<String>(count);
+		if (firstLine >= lineCount)
+			return lines;
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			channel.position(offsets[(int) (firstLine / STEP)]);
+			BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel)));
+			for (long skip = firstLine % STEP; skip > 0; skip--)
+				in.readLine();
+			String line;
+			while (lines.size() < count && (line = in.readLine()) != null)
+				lines.add(line);
+		} finally {
+			stream.close();
+		}
+		return lines;
+	}
+
+	private void scan(Cancellable cancellable) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			long position = 0;
+			boolean lineOpen = false;
+			boolean afterCarriageReturn = false;
+			while (channel.read(buffer) > 0 && !cancellable.isCancelled()) {
+				buffer.flip();
+				int limit = buffer.limit();
+				for (int i = 0; i < limit; i++) {
+					byte b = buffer.get(i);
+					if (b == '\n' && afterCarriageReturn) {
+						afterCarriageReturn = false;
+						continue;
+					}
+					if (!lineOpen) {
+						addLine(position + i);
+						lineOpen = true;
+					}
+					afterCarriageReturn = b == '\r';
+					if (b == '\n' || b == '\r')
+						lineOpen = false;
+				}
+				position += limit;
+				buffer.clear();
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	private void addLine(long offset) {
+		if (lineCount % STEP == 0) {
+			int slot = (int) (lineCount / STEP);
+			if (slot == offsets.length)
+				offsets = Arrays.copyOf(offsets, slot * 2);
+			offsets[slot] = offset;
+		}
+		lineCount++;
+	}
+}
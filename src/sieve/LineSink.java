@@ -0,0 +1,12 @@
+package sieve;
+
+/**
+ * Receives the lines produced by a processing stage. Closing a sink flushes
+ * whatever the stage still holds and closes the sinks downstream of it.
+ */
+public interface LineSink {
+
+	void line(String line) throws Exception;
+
+	void close() throws Exception;
+}
@@ -0,0 +1,15 @@
+package sieve;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Text that can be read a few lines at a time from anywhere, such as a page
+ * of the preview.
+ */
+public interface Lines {
+
+	long lineCount();
+
+	List<String> readLines(long firstLine, int count) throws IOException;
+}
@@ -0,0 +1,83 @@
+package sieve;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges rankings counted separately, such as those of parts of a corpus
+ * counted on different machines, into one ranking without the window; see
+ * {@link Sieve#merge}. A directory stands for all the files in it.
+ */
+public class Merge {
+
+	private static final String USAGE = "Usage: merge [-counting-memory <MB>] <output file> <ranking or directory>...\n"
+			+ "  rankings: Count&Sort results with counts, as text, compressed text or '" + FrequencyList.SUFFIX
+			+ "' files\n"
+			+ "  counting-memory: megabytes of counts kept in memory before they are spilled to disk,\n"
+			+ "                   0 for no limit";
+
+	public static void main(String[] args) throws Exception {
+		Configuration configuration = new Configuration();
+		try {
+			configuration.load(new File(Configuration.FILE_NAME));
+		} catch (FileNotFoundException e) {
+			System.err.println("Could not find '" + Configuration.FILE_NAME + "' file. Running with default settings.");
+		} catch (IOException e) {
+			System.err.println("Could not read '" + Configuration.FILE_NAME + "' file: " + e.getMessage()
+					+ ". Running with default settings.");
+		}
+		for (String line : configuration.getMalformedLines())
+			System.err.println("Ignoring malformed setting '" + line + "' in '" + Configuration.FILE_NAME + "' file.");
+		List<String> positional = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-counting-memory") && i + 1 < args.length)
+				configuration.setCountingMemory(Integer.parseInt(args[++i]));
+			else if (!args[i].equals("merge"))
+				positional.add(args[i]);
+		}
+		if (positional.size() < 2) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		File output = new File(positional.get(0));
+		Job job = new Job(output.getPath());
+		try {
+			List<File> inputs = inputs(positional.subList(1, positional.size()), output);
+			Sieve.merge(inputs, output, configuration.getCountingMemoryBudget(), job);
+			System.out.println(output.getName() + ": merged " + inputs.size() + " rankings");
+		} catch (IOException e) {
+			System.err.println(output.getName() + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Lists the files to merge in a fixed order, leaving out the output so
+	 * that merging into a directory of rankings again does not count it.
+	 */
+	private static List<File> inputs(List<String> names, File output) throws IOException {
+		List<File> inputs = new ArrayList<File>();
+		for (String name : names) {
+			File file = new File(name);
+			if (file.isDirectory()) {
+				File[] files = file.listFiles();
+				Arrays.sort(files);
+				for (File f : files)
+					if (f.isFile() && !f.getName().endsWith(FrequencyStore.SUFFIX)
+							&& !f.getAbsoluteFile().equals(output.getAbsoluteFile()))
+						inputs.add(f);
+			} else if (file.isFile()) {
+				inputs.add(file);
+			} else {
+				throw new IOException("'" + file + "' does not exist");
+			}
+		}
+		if (inputs.isEmpty())
+			throw new IOException("No rankings to merge");
+		return inputs;
+	}
+}
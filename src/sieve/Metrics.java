@@ -0,0 +1,224 @@
+package sieve;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Counters and timers of one job. Every stage accumulates the time spent in
+ * it and the lines and bytes it handled, across all threads working on it;
+ * each timed interval is also emitted as a JFR event. Progress is measured
+ * in bytes of input read, against the input size when it is known.
+ */
+public class Metrics {
+
+	public enum Stage {
+		STRIP("strip"), TAGGER_SPAWN("tagger-spawn"), TAGGER_READ("tagger-read"), COUNT("count"), SORT(
+				"sort"), WRITE("write"), FILTER("filter");
+
+		private final String key;
+
+		private Stage(String key) {
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
+	private final String name;
+	private final long startNanos = System.nanoTime();
+	private final LongAdder[] nanos = adders();
+	private final LongAdder[] lines = adders();
+	private final LongAdder[] bytes = adders();
+	private final LongAdder progressBytes = new LongAdder();
+	private final LongAdder progressLines = new LongAdder();
+	private volatile long inputSize = -1;
+	private volatile long endNanos;
+
+	public Metrics(String name) {
+		this.name = name;
+	}
+
+	public Timer start(Stage stage) {
+		return new Timer(stage);
+	}
+
+	public void setInputSize(long inputSize) {
+		this.inputSize = inputSize;
+	}
+
+	public void addProgress(long bytes, long lines) {
+		progressBytes.add(bytes);
+		progressLines.add(lines);
+	}
+
+	/**
+	 * Opens the file for reading, counting the bytes read as progress.
+	 */
+	public InputStream track(File file) throws IOException {
+		setInputSize(file.length());
+		return new FilterInputStream(new FileInputStream(file)) {
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0)
+					progressBytes.increment();
+				return b;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0)
+					progressBytes.add(n);
+				return n;
+			}
+		};
+	}
+
+	public void finish() {
+		endNanos = System.nanoTime();
+	}
+
+	/**
+	 * Returns the fraction of the input read so far, or -1 if the input size
+	 * is not known.
+	 */
+	public double getProgress() {
+		if (inputSize <= 0)
+			return -1;
+		return Math.min(1.0, (double) progressBytes.sum() / inputSize);
+	}
+
+	public double getLinesPerSecond() {
+		double seconds = getElapsedNanos() / 1e9;
+		return seconds > 0 ? progressLines.sum() / seconds : 0;
+	}
+
+	/**
+	 * Returns the estimated number of seconds left, or -1 if it cannot be
+	 * estimated yet.
+	 */
+	public long getEtaSeconds() {
+		double progress = getProgress();
+		if (progress <= 0)
+			return -1;
+		return (long) (getElapsedNanos() / 1e9 * (1 - progress) / progress);
+	}
+
+	public long getElapsedNanos() {
+		return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+	}
+
+	public String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"job\":\"").append(name.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+		json.append(",\"elapsedMs\":").append(getElapsedNanos() / 1000000);
+		json.append(",\"inputBytes\":").append(inputSize);
+		json.append(",\"bytesRead\":").append(progressBytes.sum());
+		json.append(",\"lines\":").append(progressLines.sum());
+		json.append(",\"stages\":{");
+		boolean first = true;
+		for (Stage stage : Stage.values()) {
+			int i = stage.ordinal();
+			if (nanos[i].sum() == 0 && lines[i].sum() == 0)
+				continue;
+			if (!first)
+				json.append(',');
+			first = false;
+			json.append('"').append(stage.getKey()).append("\":{\"ms\":").append(nanos[i].sum() / 1000000)
+					.append(",\"lines\":").append(lines[i].sum()).append(",\"bytes\":").append(bytes[i].sum())
+					.append('}');
+		}
+		json.append("}}");
+		return json.toString();
+	}
+
+	public void appendTo(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file, true));
+		try {
+			out.println(toJson());
+		} finally {
+			out.close();
+		}
+	}
+
+	private static LongAdder[] adders() {
+		LongAdder[] adders = new LongAdder[Stage.values().length];
+		for (int i = 0; i < adders.length; i++)
+			adders[i] = new LongAdder();
+		return adders;
+	}
+
+	public class Timer {
+		private final Stage stage;
+		private final long begin;
+		private final StageEvent event;
+
+		Timer(Stage stage) {
+			this.stage = stage;
+			StageEvent e = new StageEvent();
+			if (e.isEnabled()) {
+				e.begin();
+				event = e;
+			} else {
+				event = null;
+			}
+			begin = System.nanoTime();
+		}
+
+		public void stop() {
+			stop(0, 0);
+		}
+
+		public void stop(long stageLines, long stageBytes) {
+			int i = stage.ordinal();
+			nanos[i].add(System.nanoTime() - begin);
+			lines[i].add(stageLines);
+			bytes[i].add(stageBytes);
+			if (event != null) {
+				event.end();
+				if (event.shouldCommit()) {
+					event.job = name;
+					event.stage = stage.getKey();
+					event.lines = stageLines;
+					event.bytes = stageBytes;
+					event.commit();
+				}
+			}
+		}
+	}
+
+	@Name("sieve.Stage")
+	@Label("Word Sieve Stage")
+	@Category("Word Sieve")
+	@Description("Time spent in one stage of a sieve job")
+	@StackTrace(false)
+	@Threshold("1 ms")
+	static class StageEvent extends Event {
+		@Label("Job")
+		String job;
+
+		@Label("Stage")
+		String stage;
+
+		@Label("Lines")
+		long lines;
+
+		@Label("Bytes")
+		long bytes;
+	}
+}
@@ -0,0 +1,155 @@
+package sieve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts lemmas of tagger output lines on several threads. Lines are handed
+ * out in batches to workers that each fill a local {@link WordCounter}; the
+ * local tables are merged pairwise on a fork-join pool when counting ends.
+ * Workers are daemon threads, so a counter that was neither finished nor
+ * cancelled does not keep the process alive.
+ */
+public class ParallelCounter {
+
+	private static final int BATCH_SIZE = 8192;
+	private static final Batch END_OF_INPUT = new Batch(new String[0], 0, 0);
+
+	private final int threads;
+	private final BlockingQueue<Batch> queue;
+	private final ExecutorService executor;
+	private final List<Future<WordCounter>> workers;
+	private String[] lines;
+	private int filled;
+	private long position;
+
+	public ParallelCounter(int threads) {
+		this.threads = threads;
+		queue = new ArrayBlockingQueue<Batch>(threads * 4);
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "counter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		workers = new ArrayList<Future<WordCounter>>();
+		for (int i = 0; i < threads; i++)
+			workers.add(executor.submit(new Worker()));
+		lines = new String[BATCH_SIZE];
+	}
+
+	public void add(String line) throws InterruptedException, ExecutionException {
+		lines[filled++] = line;
+		if (filled == BATCH_SIZE)
+			flush();
+	}
+
+	public WordCounter finish() throws InterruptedException, ExecutionException {
+		try {
+			flush();
+			for (int i = 0; i < threads; i++)
+				put(END_OF_INPUT);
+			List<WordCounter> tables = new ArrayList<WordCounter>();
+			for (Future<WordCounter> worker : workers)
+				tables.add(worker.get());
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				return pool.invoke(new MergeTask(tables, 0, tables.size()));
+			} finally {
+				pool.shutdown();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Stops the workers without waiting for the lines handed out so far.
+	 */
+	public void cancel() {
+		executor.shutdownNow();
+	}
+
+	private void flush() throws InterruptedException, ExecutionException {
+		if (filled == 0)
+			return;
+		put(new Batch(lines, filled, position));
+		position += filled;
+		lines = new String[BATCH_SIZE];
+		filled = 0;
+	}
+
+	private void put(Batch batch) throws InterruptedException, ExecutionException {
+		while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+			for (Future<WordCounter> worker : workers)
+				if (worker.isDone())
+					worker.get();
+		}
+	}
+
+	private static class Batch {
+		final String[] lines;
+		final int length;
+		final long position;
+
+		Batch(String[] lines, int length, long position) {
+			this.lines = lines;
+			this.length = length;
+			this.position = position;
+		}
+	}
+
+	private class Worker implements Callable<WordCounter> {
+		public WordCounter call() throws Exception {
+			WordCounter counter = new WordCounter();
+			TaggerOutput parser = new TaggerOutput();
+			Batch batch;
+			while ((batch = queue.take()) != END_OF_INPUT) {
+				for (int i = 0; i < batch.length; i++) {
+					String line = batch.lines[i];
+					parser.parse(line);
+					counter.add(line, parser.lemmaStart(), parser.lemmaEnd(), 1, batch.position + i);
+				}
+			}
+			return counter;
+		}
+	}
+
+	private static class MergeTask extends RecursiveTask<WordCounter> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<WordCounter> tables;
+		private final int from;
+		private final int to;
+
+		MergeTask(List<WordCounter> tables, int from, int to) {
+			this.tables = tables;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected WordCounter compute() {
+			if (to - from == 1)
+				return tables.get(from);
+			int middle = (from + to) >>> 1;
+			MergeTask left = new MergeTask(tables, from, middle);
+			left.fork();
+			WordCounter right = new MergeTask(tables, middle, to).compute();
+			WordCounter merged = left.join();
+			merged.merge(right);
+			return merged;
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package sieve;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs a chain of actions as streaming stages in a single pass over the
+ * input: stripped lines go straight to the tagger, lemmas to the counter and
+ * ranked entries through the filter. Results of the intermediate actions are
+ * written to disk only if snapshot files are given for them. If reading the
+ * input or any stage fails, nothing is ranked and the output and snapshots
+ * are deleted.
+ */
+public class Pipeline {
+
+	private static final int PROGRESS_LINES = 1024;
+
+	private final List<Action> actions;
+	private final Configuration configuration;
+	private final String language;
+	private final boolean parallelCounting;
+	private volatile boolean aborted;
+	private long inputSize = -1;
+
+	public Pipeline(List<Action> actions, Configuration configuration, String language, boolean parallelCounting) {
+		this.actions = actions;
+		this.configuration = configuration;
+		this.language = language;
+		this.parallelCounting = parallelCounting;
+	}
+
+	public void run(File input, File output, Job job) throws Exception {
+		run(input, output, null, job);
+	}
+
+	/**
+	 * @param snapshots
+	 *            files receiving the result of every action but the last one,
+	 *            or null if intermediate results are not needed
+	 */
+	public void run(File input, File output, File[] snapshots, Job job) throws Exception {
+		Metrics metrics = job.getMetrics();
+		inputSize = Inputs.isEncoded(input) ? -1 : input.length();
+		LineSink sink = new FileSink(output);
+		for (int i = actions.size() - 1; i >= 0; i--) {
+			if (snapshots != null && i < actions.size() - 1)
+				sink = new TeeSink(new FileSink(snapshots[i]), sink);
+			sink = actions.get(i).stage(sink, this, job);
+		}
+		boolean succeeded = false;
+		try {
+			try {
+				read(input, sink, job);
+			} catch (Exception e) {
+				aborted = true;
+				try {
+					sink.close();
+				} catch (Exception closing) {
+					e.addSuppressed(closing);
+				}
+				throw e;
+			}
+			sink.close();
+			succeeded = true;
+		} finally {
+			if (!succeeded) {
+				output.delete();
+				if (snapshots != null)
+					for (File snapshot : snapshots)
+						snapshot.delete();
+			}
+		}
+	}
+
+	private static void read(File input, LineSink sink, Job job) throws Exception {
+		Metrics metrics = job.getMetrics();
+		BufferedReader in = Inputs.openReader(input, metrics);
+		try {
+			String line;
+			long lines = 0;
+			while ((line = in.readLine()) != null && !job.isCancelled()) {
+				sink.line(line);
+				if ((++lines & (PROGRESS_LINES - 1)) == 0)
+					metrics.addProgress(0, PROGRESS_LINES);
+			}
+			metrics.addProgress(0, lines & (PROGRESS_LINES - 1));
+		} finally {
+			in.close();
+		}
+	}
+
+	LineSink stripStage(final LineSink next, final Job job) {
+		return new LineSink() {
+			private final Metrics.Timer timer = job.getMetrics().start(Metrics.Stage.STRIP);
+			private long lines;
+
+			public void line(String line) throws Exception {
+				int tab = line.indexOf('\t');
+				next.line(tab < 0 ? line : line.substring(0, tab));
+				lines++;
+			}
+
+			public void close() throws Exception {
+				timer.stop(lines, 0);
+				next.close();
+			}
+		};
+	}
+
+	LineSink countSortStage(LineSink next, boolean withStats, Job job) throws Exception {
+		return new CountSortStage(next, withStats, configuration.getTagger(language), new Sieve.LemmaCounter(
+				parallelCounting, configuration.getCountingMemoryBudget()), job);
+	}
+
+	LineSink topKStage(LineSink next, Job job) throws Exception {
+		return new CountSortStage(next, true, configuration.getTagger(language), new Sieve.LemmaCounter(
+				configuration.getTopKCounter()), job);
+	}
+
+	LineSink filterStage(final LineSink next, final Job job) throws Exception {
+		final FilterSet filterSet = configuration.getFilterSet(language);
+		return new LineSink() {
+			private final Metrics.Timer timer = job.getMetrics().start(Metrics.Stage.FILTER);
+			private long lines;
+
+			public void line(String line) throws Exception {
+				if (Sieve.passesFilter(line, filterSet))
+					next.line(line);
+				lines++;
+			}
+
+			public void close() throws Exception {
+				timer.stop(lines, 0);
+				next.close();
+			}
+		};
+	}
+
+	/**
+	 * Tags the lines it is given and, once they have all come, passes the
+	 * ranking on. A stage closed after the pipeline failed only releases the
+	 * tagger and the counter.
+	 */
+	private class CountSortStage implements LineSink {
+		private final LineSink next;
+		private final boolean withStats;
+		private final Tagger tagger;
+		private final Job job;
+		private final List<Closeable> registrations = new ArrayList<Closeable>();
+		private final Sieve.LemmaCounter lemmas;
+		private TaggerPool.Session session;
+		private File spool;
+		private PrintWriter out;
+		private Process process;
+		private ProcessReader reader;
+		private FutureTask<Sieve.LemmaCounter> counting;
+
+		CountSortStage(LineSink next, boolean withStats, Tagger tagger, Sieve.LemmaCounter lemmas, Job job)
+				throws Exception {
+			this.next = next;
+			this.withStats = withStats;
+			this.tagger = tagger;
+			this.lemmas = lemmas;
+			this.job = job;
+			if (tagger.isPooled()) {
+				Metrics.Timer spawn = job.getMetrics().start(Metrics.Stage.TAGGER_SPAWN);
+				session = TaggerPool.get(tagger).open(lemmas, job.getMetrics(), inputSize);
+				spawn.stop();
+				final TaggerPool.Session cancellableSession = session;
+				registrations.add(job.register(new Closeable() {
+					public void close() {
+						cancellableSession.cancel();
+					}
+				}));
+			} else if (tagger.readsStandardInput()) {
+				Metrics.Timer spawn = job.getMetrics().start(Metrics.Stage.TAGGER_SPAWN);
+				process = tagger.start();
+				spawn.stop();
+				registrations.add(job.register(process));
+				startCounting();
+				out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(process.getOutputStream())));
+			} else {
+				spool = File.createTempFile("sieve", ".tmp");
+				out = new PrintWriter(new FileWriter(spool));
+			}
+		}
+
+		public void line(String line) throws Exception {
+			if (session != null)
+				session.line(line);
+			else
+				out.println(line);
+		}
+
+		public void close() throws Exception {
+			try {
+				if (job.isCancelled() || aborted) {
+					if (out != null)
+						out.close();
+					if (session != null)
+						session.cancel();
+					if (process != null)
+						Tagger.destroy(process);
+					lemmas.cancel();
+					return;
+				}
+				if (session != null) {
+					session.close();
+					lemmas.finish();
+				} else {
+					out.close();
+					if (process == null) {
+						Metrics.Timer spawn = job.getMetrics().start(Metrics.Stage.TAGGER_SPAWN);
+						process = tagger.start(spool);
+						spawn.stop();
+						registrations.add(job.register(process));
+						startCounting();
+					}
+					counting.get();
+					int status = process.waitFor();
+					if (status != 0 && !job.isCancelled()) {
+						lemmas.cancel();
+						throw new IOException("The tagger exited with status " + status + ":\n"
+								+ reader.getErrorOutput());
+					}
+				}
+				if (!job.isCancelled())
+					lemmas.rank(withStats, next, job.getMetrics(), job);
+				else
+					lemmas.cancel();
+			} finally {
+				for (Closeable registration : registrations)
+					job.unregister(registration);
+				if (spool != null)
+					spool.delete();
+				next.close();
+			}
+		}
+
+		private void startCounting() {
+			final ProcessReader reader = new ProcessReader(process, job.getMetrics());
+			this.reader = reader;
+			counting = new FutureTask<Sieve.LemmaCounter>(new Callable<Sieve.LemmaCounter>() {
+				public Sieve.LemmaCounter call() throws Exception {
+					Metrics.Timer timer = job.getMetrics().start(Metrics.Stage.COUNT);
+					try {
+						return Sieve.countLemmas(reader, lemmas, job);
+					} finally {
+						reader.close();
+						timer.stop();
+					}
+				}
+			});
+			registrations.add(job.register(counting));
+			new Thread(counting, "tagger-output").start();
+		}
+	}
+
+	private static class FileSink implements LineSink {
+		private final PrintWriter out;
+
+		FileSink(File file) throws Exception {
+			out = Compression.writer(file);
+		}
+
+		public void line(String line) {
+			out.println(line);
+		}
+
+		public void close() {
+			out.close();
+		}
+	}
+
+	private static class TeeSink implements LineSink {
+		private final LineSink first;
+		private final LineSink second;
+
+		TeeSink(LineSink first, LineSink second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		public void line(String line) throws Exception {
+			first.line(line);
+			second.line(line);
+		}
+
+		public void close() throws Exception {
+			try {
+				first.close();
+			} finally {
+				second.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package sieve;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the standard output and error of a tagger process on threads of
+ * their own. Output lines are handed over in batches through a bounded
+ * queue, so reading the pipe overlaps with counting, and a consumer that
+ * falls behind holds the reader back instead of letting batches pile up.
+ * Error output is drained as it comes, so a chatty tagger never blocks on a
+ * full pipe; its last lines are kept to report failures.
+ */
+public class ProcessReader implements Closeable {
+
+	private static final int BATCH_SIZE = 1024;
+	private static final int QUEUED_BATCHES = 16;
+	private static final int ERROR_LINES = 20;
+	private static final long ERROR_WAIT_MILLIS = 1000;
+	private static final String[] END_OF_OUTPUT = new String[0];
+
+	private final BlockingQueue<String[]> batches = new ArrayBlockingQueue<String[]>(QUEUED_BATCHES);
+	private final Deque<String> errorLines = new ArrayDeque<String>();
+	private final Metrics metrics;
+	private final Thread errorReader;
+	private volatile boolean closed;
+	private volatile IOException error;
+	private boolean finished;
+
+	public ProcessReader(final Process process, Metrics metrics) {
+		this.metrics = metrics;
+		start("tagger-stdout", new Runnable() {
+			public void run() {
+				readOutput(process.getInputStream());
+			}
+		});
+		errorReader = start("tagger-stderr", new Runnable() {
+			public void run() {
+				readErrors(process.getErrorStream());
+			}
+		});
+	}
+
+	/**
+	 * Returns the next batch of output lines, or null once the output has
+	 * ended.
+	 *
+	 * @throws IOException
+	 *             if reading the output failed before it ended
+	 */
+	public String[] next() throws IOException, InterruptedException {
+		if (finished)
+			return null;
+		String[] batch = batches.take();
+		if (batch != END_OF_OUTPUT)
+			return batch;
+		finished = true;
+		if (error != null && !closed)
+			throw error;
+		return null;
+	}
+
+	/**
+	 * Returns the last lines the process wrote to its error output, waiting
+	 * up to a second for the error output to end, as the process may have
+	 * exited before all of it was read.
+	 */
+	public String getErrorOutput() {
+		try {
+			errorReader.join(ERROR_WAIT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		StringBuilder s = new StringBuilder();
+		synchronized (errorLines) {
+			for (String line : errorLines)
+				s.append(line).append('\n');
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Stops handing over output; the reader thread ends with the process.
+	 */
+	public void close() {
+		closed = true;
+		batches.clear();
+	}
+
+	private void readOutput(InputStream stream) {
+		BufferedReader in = new BufferedReader(new InputStreamReader(stream));
+		try {
+			String[] batch = new String[BATCH_SIZE];
+			int n = 0;
+			long bytes = 0;
+			Metrics.Timer timer = metrics.start(Metrics.Stage.TAGGER_READ);
+			String line;
+			while ((line = in.readLine()) != null && !closed) {
+				batch[n++] = line;
+				bytes += line.length() + 1;
+				if (n == BATCH_SIZE) {
+					timer.stop(n, bytes);
+					put(batch);
+					batch = new String[BATCH_SIZE];
+					n = 0;
+					bytes = 0;
+					timer = metrics.start(Metrics.Stage.TAGGER_READ);
+				}
+			}
+			timer.stop(n, bytes);
+			if (n > 0)
+				put(Arrays.copyOf(batch, n));
+		} catch (IOException e) {
+			error = e;
+		} catch (InterruptedException e) {
+		} finally {
+			try {
+				put(END_OF_OUTPUT);
+			} catch (InterruptedException e) {
+			}
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void readErrors(InputStream stream) {
+		BufferedReader in = new BufferedReader(new InputStreamReader(stream));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				synchronized (errorLines) {
+					if (errorLines.size() == ERROR_LINES)
+						errorLines.removeFirst();
+					errorLines.addLast(line);
+				}
+			}
+		} catch (IOException e) {
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void put(String[] batch) throws InterruptedException {
+		while (!closed && !batches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+		}
+	}
+
+	private static Thread start(String name, Runnable runnable) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+}
@@ -0,0 +1,101 @@
+package sieve;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes ranked words as Count&Sort does, one word at a time in rank order.
+ * With stats a line reads "rank word count coverage band": coverage is the
+ * share of the counted text the words up to that rank cover and band the
+ * thousand of ranks the word falls in, "1k" for the first thousand. The
+ * words are followed by {@value #SUMMARY_PREFIX} lines with the number of
+ * words and tokens and of the words that occur once or twice, all taken
+ * from the same pass.
+ */
+public class Ranking {
+
+	public static final String SUMMARY_PREFIX = "#";
+
+	private static final int BAND_SIZE = 1000;
+
+	private final LineSink out;
+	private final boolean withStats;
+	private final long tokens;
+	private int rank;
+	private long covered;
+	private int hapaxLegomena;
+	private int disLegomena;
+
+	/**
+	 * @param tokens
+	 *            number of words of the counted text, the sum of all counts
+	 */
+	public Ranking(LineSink out, boolean withStats, long tokens) {
+		this.out = out;
+		this.withStats = withStats;
+		this.tokens = tokens;
+	}
+
+	public void add(String word, int count) throws Exception {
+		rank++;
+		covered += count;
+		if (count == 1)
+			hapaxLegomena++;
+		else if (count == 2)
+			disLegomena++;
+		out.line(withStats ? line(rank, word, count, covered, tokens) : word);
+	}
+
+	public int size() {
+		return rank;
+	}
+
+	/**
+	 * Writes the summary lines of a ranking with stats.
+	 */
+	public void finish() throws Exception {
+		if (!withStats)
+			return;
+		for (String line : summary(rank, tokens, hapaxLegomena, disLegomena))
+			out.line(line);
+	}
+
+	static String line(int rank, String word, int count, long covered, long tokens) {
+		StringBuilder s = new StringBuilder(word.length() + 32);
+		s.append(rank).append(' ').append(word).append(' ').append(count).append(' ');
+		appendPercent(s, covered, tokens);
+		s.append(' ').append((rank - 1) / BAND_SIZE + 1).append('k');
+		return s.toString();
+	}
+
+	static List<String> summary(int words, long tokens, int hapaxLegomena, int disLegomena) {
+		List<String> lines = new ArrayList<String>(4);
+		lines.add(SUMMARY_PREFIX + " words " + words);
+		lines.add(SUMMARY_PREFIX + " tokens " + tokens);
+		lines.add(SUMMARY_PREFIX + " once " + share(hapaxLegomena, words, tokens));
+		lines.add(SUMMARY_PREFIX + " twice " + share(disLegomena, words, 2L * disLegomena, tokens));
+		return lines;
+	}
+
+	private static String share(int count, int words, long tokens) {
+		return share(count, words, count, tokens);
+	}
+
+	private static String share(int count, int words, long occurrences, long tokens) {
+		StringBuilder s = new StringBuilder();
+		s.append(count).append(' ');
+		appendPercent(s, count, words);
+		s.append(" of words ");
+		appendPercent(s, occurrences, tokens);
+		s.append(" of tokens");
+		return s.toString();
+	}
+
+	private static void appendPercent(StringBuilder s, long part, long whole) {
+		long hundredths = whole == 0 ? 0 : (part * 10000 + whole / 2) / whole;
+		s.append(hundredths / 100).append('.');
+		if (hundredths % 100 < 10)
+			s.append('0');
+		s.append(hundredths % 100).append('%');
+	}
+}
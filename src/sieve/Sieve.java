@@ -0,0 +1,656 @@
+package sieve;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * The processing steps behind the Action menu. Each step reads one file and
+ * writes its result to another; the caller decides where results go.
+ */
+public class Sieve {
+
+	private Sieve() {
+	}
+
+	private static final int BATCH_SIZE = 1024;
+
+	public static void stripAnkiTranslations(File input, File output, Job job) throws IOException {
+		AnkiStripper.strip(input, output, job);
+	}
+
+	/**
+	 * @param memoryBudget
+	 *            bytes sequential counting may use before spilling counts to
+	 *            disk, or 0 for no limit; parallel counting keeps all counts
+	 *            in memory
+	 */
+	public static void countSort(File input, File output, boolean withStats, Tagger tagger, TaggerCache cache,
+			LemmaMemo memo, boolean parallel, long memoryBudget, Job job) throws Exception {
+		LemmaCounter lemmas = new LemmaCounter(parallel, memoryBudget);
+		boolean ranked = false;
+		try {
+			tag(input, tagger, cache, memo, lemmas, job);
+			if (finishCounting(lemmas, job))
+				writeRanking(lemmas, withStats, output, job);
+			ranked = true;
+		} finally {
+			if (!ranked)
+				lemmas.cancel();
+		}
+	}
+
+	/**
+	 * Writes the approximate top K lemmas of the input with the error bounds
+	 * of their counts, see {@link TopKCounter}.
+	 */
+	public static void countTopK(File input, File output, Tagger tagger, TaggerCache cache, LemmaMemo memo,
+			TopKCounter topK, Job job) throws Exception {
+		LemmaCounter lemmas = new LemmaCounter(topK);
+		boolean ranked = false;
+		try {
+			tag(input, tagger, cache, memo, lemmas, job);
+			if (finishCounting(lemmas, job))
+				writeRanking(lemmas, true, output, job);
+			ranked = true;
+		} finally {
+			if (!ranked)
+				lemmas.cancel();
+		}
+	}
+
+	/**
+	 * Counts like {@link #countSort}, but tags only the text appended to the
+	 * input since its last incremental count and adds its counts to the
+	 * {@link FrequencyStore} next to the input.
+	 */
+	public static void countSortIncremental(File input, File output, boolean withStats, Tagger tagger,
+			TaggerCache cache, LemmaMemo memo, boolean parallel, Job job) throws Exception {
+		if (Compression.isCompressed(input))
+			throw new IOException("'" + input.getName()
+					+ "' is compressed; text cannot be appended to it and counted incrementally");
+		if (FrequencyList.isFrequencyList(input))
+			throw new IOException("'" + input.getName()
+					+ "' is a frequency list; text cannot be appended to it and counted incrementally");
+		FrequencyStore store = FrequencyStore.open(input, tagger);
+		long counted = store.verify();
+		if (job.isCancelled())
+			return;
+		File newText = store.copyNewText(counted);
+		try {
+			job.getMetrics().setInputSize(newText.length());
+			if (newText.length() > 0) {
+				LemmaCounter lemmas = new LemmaCounter(parallel, 0);
+				boolean finished = false;
+				try {
+					tag(newText, tagger, cache, memo, lemmas, job);
+					finished = finishCounting(lemmas, job);
+				} finally {
+					if (!finished)
+						lemmas.cancel();
+				}
+				if (!finished)
+					return;
+				store.add(lemmas.getCounter());
+				store.save();
+			}
+		} finally {
+			newText.delete();
+		}
+		writeRanking(store.getCounter(), withStats, output, job);
+	}
+
+	/**
+	 * Merges rankings counted separately, such as those of parts of a corpus,
+	 * into one ranking with stats, summing the counts of each word. Words tied
+	 * in count are ranked by their earliest position in any list, counted in
+	 * tokens from its top, and then by the order of the lists, so a single
+	 * list comes out as it went in. Counts
+	 * beyond the memory budget are spilled to disk as runs sorted by word,
+	 * which are then merged k ways.
+	 *
+	 * @param inputs
+	 *            rankings with counts, as text or binary {@link FrequencyList}
+	 *            files, compressed or not
+	 */
+	public static void merge(List<File> inputs, File output, long memoryBudget, Job job) throws Exception {
+		Metrics metrics = job.getMetrics();
+		long inputSize = 0;
+		for (File input : inputs)
+			inputSize += input.length();
+		LemmaCounter lemmas = new LemmaCounter(false, memoryBudget);
+		boolean ranked = false;
+		try {
+			for (int i = 0; i < inputs.size() && !job.isCancelled(); i++) {
+				File input = inputs.get(i);
+				Metrics.Timer timer = metrics.start(Metrics.Stage.COUNT);
+				long words = addRanking(input, i, inputs.size(), lemmas, inputSize, job);
+				timer.stop(words, input.length());
+			}
+			if (finishCounting(lemmas, job))
+				writeRanking(lemmas, true, output, job);
+			ranked = true;
+		} finally {
+			if (!ranked)
+				lemmas.cancel();
+		}
+	}
+
+	/**
+	 * Adds the counts of the given one of the rankings, skipping its summary
+	 * lines, and returns the number of words it had. Positions of different
+	 * rankings are interleaved so that no two words share one.
+	 */
+	private static long addRanking(File input, int ranking, int rankings, LemmaCounter lemmas, long inputSize,
+			Job job) throws Exception {
+		Metrics metrics = job.getMetrics();
+		long position = 0;
+		if (FrequencyList.isFrequencyList(input)) {
+			FrequencyList list = FrequencyList.open(input);
+			int size = list.size();
+			for (int i = 0; i < size && !job.isCancelled(); i++) {
+				int count = list.count(i);
+				lemmas.add(list.word(i), count, position * rankings + ranking);
+				position += count;
+			}
+			metrics.addProgress(input.length(), size);
+			return size;
+		}
+		BufferedReader in = Inputs.openReader(input, metrics);
+		metrics.setInputSize(inputSize);
+		long words = 0;
+		try {
+			String line;
+			for (long lineNumber = 1; (line = in.readLine()) != null && !job.isCancelled(); lineNumber++) {
+				if (line.isEmpty() || line.startsWith(Ranking.SUMMARY_PREFIX + " "))
+					continue;
+				int wordStart = line.indexOf(' ') + 1;
+				int wordEnd = wordStart == 0 ? -1 : line.indexOf(' ', wordStart);
+				if (wordEnd < 0)
+					throw new IOException("Line " + lineNumber + " of '" + input.getName()
+							+ "' has no count; only rankings with counts can be merged");
+				int countEnd = line.indexOf(' ', wordEnd + 1);
+				int count;
+				try {
+					count = Integer.parseInt(line.substring(wordEnd + 1, countEnd < 0 ? line.length() : countEnd));
+				} catch (NumberFormatException e) {
+					throw new IOException("Line " + lineNumber + " of '" + input.getName()
+							+ "' does not read 'rank word count'");
+				}
+				lemmas.add(line.substring(wordStart, wordEnd), count, position * rankings + ranking);
+				position += count;
+				if ((++words & (BATCH_SIZE - 1)) == 0)
+					metrics.addProgress(0, BATCH_SIZE);
+			}
+			metrics.addProgress(0, words & (BATCH_SIZE - 1));
+		} finally {
+			in.close();
+		}
+		return words;
+	}
+
+	private static boolean finishCounting(LemmaCounter lemmas, Job job) throws Exception {
+		if (job.isCancelled()) {
+			lemmas.cancel();
+			return false;
+		}
+		Metrics.Timer timer = job.getMetrics().start(Metrics.Stage.COUNT);
+		lemmas.finish();
+		timer.stop();
+		return true;
+	}
+
+	/**
+	 * Counts spilled to disk and approximate counts are ranked into a text
+	 * file whatever the output name, as a {@link FrequencyList} is built in
+	 * memory from exact counts.
+	 */
+	private static void writeRanking(LemmaCounter lemmas, boolean withStats, File output, Job job) throws Exception {
+		if (lemmas.getCounter() != null) {
+			writeRanking(lemmas.getCounter(), withStats, output, job);
+			return;
+		}
+		final PrintWriter out = Compression.writer(output);
+		try {
+			lemmas.rank(withStats, new LineSink() {
+				public void line(String line) {
+					out.println(line);
+				}
+
+				public void close() {
+				}
+			}, job.getMetrics(), job);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the ranking as a binary {@link FrequencyList} if the output file
+	 * has its suffix and as text otherwise.
+	 */
+	private static void writeRanking(WordCounter counter, boolean withStats, File output, Job job) throws Exception {
+		if (output.getName().endsWith(FrequencyList.SUFFIX)) {
+			int[] ids = rankOrder(counter, job.getMetrics());
+			Metrics.Timer timer = job.getMetrics().start(Metrics.Stage.WRITE);
+			String[] words = new String[ids.length];
+			int[] counts = new int[ids.length];
+			int[] ranks = new int[ids.length];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = counter.word(ids[i]);
+				counts[i] = counter.count(ids[i]);
+				ranks[i] = i + 1;
+			}
+			FrequencyList.write(output, words, counts, ranks, words.length, withStats);
+			timer.stop(words.length, output.length());
+			return;
+		}
+		final PrintWriter out = Compression.writer(output);
+		try {
+			rank(counter, withStats, new LineSink() {
+				public void line(String line) {
+					out.println(line);
+				}
+
+				public void close() {
+				}
+			}, job.getMetrics());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Tags with the remembered lemmas if there are any and through the cache
+	 * otherwise; output filled in from the memo is not exactly what the
+	 * tagger would give, so it is never cached.
+	 */
+	static boolean tag(File input, Tagger tagger, TaggerCache cache, LemmaMemo memo, LineSink output, Job job)
+			throws Exception {
+		if (memo != null)
+			return memo.tag(input, tagger, output, job);
+		return tag(input, tagger, cache, output, job);
+	}
+
+	static boolean tag(File input, Tagger tagger, TaggerCache cache, LineSink output, Job job) throws Exception {
+		if (cache == null)
+			return tag(input, tagger, output, job);
+		String key = cache.key(input, tagger);
+		Metrics.Timer timer = job.getMetrics().start(Metrics.Stage.TAGGER_READ);
+		if (cache.replay(key, output, job)) {
+			timer.stop();
+			return true;
+		}
+		TaggerCache.Recorder recorder = cache.record(key, output);
+		try {
+			boolean tagged = tag(input, tagger, recorder, job);
+			if (tagged && !job.isCancelled())
+				recorder.commit();
+			return tagged;
+		} finally {
+			recorder.close();
+		}
+	}
+
+	/**
+	 * Passes the tagger output of the input to the sink. Returns false if
+	 * the job was cancelled and throws if the tagger failed.
+	 */
+	static boolean tag(File input, Tagger tagger, LineSink output, Job job) throws Exception {
+		Metrics metrics = job.getMetrics();
+		String line;
+		if (tagger.isPooled()) {
+			Metrics.Timer spawn = metrics.start(Metrics.Stage.TAGGER_SPAWN);
+			final TaggerPool.Session session = TaggerPool.get(tagger).open(output, metrics,
+					Inputs.isEncoded(input) ? -1 : input.length());
+			spawn.stop();
+			Closeable registration = job.register(new Closeable() {
+				public void close() {
+					session.cancel();
+				}
+			});
+			BufferedReader in = null;
+			boolean closed = false;
+			try {
+				in = Inputs.openReader(input, metrics);
+				while ((line = in.readLine()) != null && !job.isCancelled()) {
+					session.line(line);
+					metrics.addProgress(0, 1);
+				}
+				session.close();
+				closed = true;
+				return true;
+			} catch (Exception e) {
+				if (job.isCancelled())
+					return false;
+				throw e;
+			} finally {
+				// stops the parts still being tagged and frees their files
+				if (!closed)
+					session.cancel();
+				if (in != null)
+					in.close();
+				job.unregister(registration);
+			}
+		}
+		Metrics.Timer spawn = metrics.start(Metrics.Stage.TAGGER_SPAWN);
+		boolean encoded = Inputs.isEncoded(input);
+		Process p = encoded ? tagger.start() : tagger.start(input);
+		spawn.stop();
+		Closeable registration = job.register(p);
+		Feeder feeder = encoded ? new Feeder(p, input, metrics) : null;
+		ProcessReader reader = new ProcessReader(p, metrics);
+		try {
+			String[] batch;
+			while ((batch = reader.next()) != null && !job.isCancelled()) {
+				Metrics.Timer count = metrics.start(Metrics.Stage.COUNT);
+				for (String taggedLine : batch)
+					output.line(taggedLine);
+				count.stop(batch.length, 0);
+				metrics.addProgress(0, batch.length);
+			}
+			if (job.isCancelled())
+				return false;
+			int status = p.waitFor();
+			if (feeder != null)
+				feeder.check();
+			if (status != 0)
+				throw new IOException("The tagger exited with status " + status + ":\n" + reader.getErrorOutput());
+			return true;
+		} catch (IOException e) {
+			if (job.isCancelled())
+				return false;
+			if (feeder != null)
+				feeder.check();
+			throw e;
+		} finally {
+			reader.close();
+			// a tagger left running when the sink fails blocks on a full pipe
+			if (p.isAlive())
+				Tagger.destroy(p);
+			job.unregister(registration);
+		}
+	}
+
+	/**
+	 * Writes the input as text to the tagger's standard input on a thread of
+	 * its own, as the tagger cannot read a compressed file or a
+	 * {@link FrequencyList} itself.
+	 * Writing stops when the tagger is killed. If the input cannot be read to
+	 * its end, the tagger is killed so that it does not finish on part of
+	 * the text, and {@link #check} reports why.
+	 */
+	private static class Feeder extends Thread {
+		private final Process process;
+		private final File input;
+		private final Metrics metrics;
+		private volatile IOException error;
+
+		Feeder(Process process, File input, Metrics metrics) {
+			super("tagger-input");
+			this.process = process;
+			this.input = input;
+			this.metrics = metrics;
+			setDaemon(true);
+			start();
+		}
+
+		public void run() {
+			OutputStream out = process.getOutputStream();
+			InputStream in = null;
+			try {
+				in = Inputs.openStream(input, metrics);
+				byte[] buffer = new byte[1 << 16];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					try {
+						out.write(buffer, 0, n);
+					} catch (IOException e) {
+						// the tagger is gone; its exit status tells why
+						return;
+					}
+				}
+			} catch (IOException e) {
+				error = e;
+				Tagger.destroy(process);
+			} finally {
+				close(in);
+				close(out);
+			}
+		}
+
+		private static void close(Closeable closeable) {
+			try {
+				if (closeable != null)
+					closeable.close();
+			} catch (IOException e) {
+			}
+		}
+
+		/**
+		 * Waits for the input to be written and throws if it could not be.
+		 */
+		void check() throws IOException, InterruptedException {
+			join();
+			if (error != null)
+				throw new IOException("Could not read '" + input.getName() + "': " + error.getMessage(), error);
+		}
+	}
+
+	/**
+	 * Drops the words of the filter set from a ranked list. A binary
+	 * {@link FrequencyList} is filtered into another one, keeping the ranks.
+	 */
+	public static void filter(File input, File output, FilterSet filterSet, Job job) throws IOException {
+		if (FrequencyList.isFrequencyList(input)) {
+			filter(FrequencyList.open(input), output, filterSet, job);
+			return;
+		}
+		Metrics metrics = job.getMetrics();
+		BufferedReader in = Inputs.openReader(input, metrics);
+		PrintWriter out = Compression.writer(output);
+		Metrics.Timer timer = metrics.start(Metrics.Stage.FILTER);
+		long lines = 0;
+		try {
+			String line;
+			while ((line = in.readLine()) != null && !job.isCancelled()) {
+				if (passesFilter(line, filterSet))
+					out.println(line);
+				if ((++lines & (BATCH_SIZE - 1)) == 0)
+					metrics.addProgress(0, BATCH_SIZE);
+			}
+			metrics.addProgress(0, lines & (BATCH_SIZE - 1));
+		} finally {
+			in.close();
+			out.close();
+			timer.stop(lines, input.length());
+		}
+	}
+
+	private static void filter(FrequencyList list, File output, FilterSet filterSet, Job job) throws IOException {
+		Metrics metrics = job.getMetrics();
+		metrics.setInputSize(list.size());
+		Metrics.Timer timer = metrics.start(Metrics.Stage.FILTER);
+		int size = list.size();
+		String[] words = new String[size];
+		int[] counts = new int[size];
+		int[] ranks = new int[size];
+		int kept = 0;
+		for (int i = 0; i < size && !job.isCancelled(); i++) {
+			String word = list.word(i);
+			if (!filterSet.contains(word)) {
+				words[kept] = word;
+				counts[kept] = list.count(i);
+				ranks[kept] = list.rank(i);
+				kept++;
+			}
+			if (((i + 1) & (BATCH_SIZE - 1)) == 0)
+				metrics.addProgress(BATCH_SIZE, BATCH_SIZE);
+		}
+		timer.stop(size, 0);
+		if (!job.isCancelled())
+			FrequencyList.write(output, words, counts, ranks, kept, list.isWithStats());
+	}
+
+	/**
+	 * Keeps the summary lines of a ranking with stats and the lines of words
+	 * that are not in the filter set.
+	 */
+	public static boolean passesFilter(String line, FilterSet filterSet) {
+		if (line.startsWith(Ranking.SUMMARY_PREFIX + " "))
+			return true;
+		String[] splitted = line.split(" ");
+		String s;
+		if (splitted.length == 1)
+			s = splitted[0];
+		else if (splitted.length >= 3)
+			s = splitted[1];
+		else
+			return false;
+		return !filterSet.contains(s);
+	}
+
+	static LemmaCounter countLemmas(ProcessReader reader, LemmaCounter lemmas, Cancellable cancellable)
+			throws Exception {
+		String[] batch;
+		while ((batch = reader.next()) != null && !cancellable.isCancelled()) {
+			for (String line : batch)
+				lemmas.line(line);
+		}
+		if (cancellable.isCancelled())
+			lemmas.cancel();
+		else
+			lemmas.finish();
+		return lemmas;
+	}
+
+	public static void rank(WordCounter counter, boolean withStats, LineSink out) throws Exception {
+		rank(counter, withStats, out, new Metrics("rank"));
+	}
+
+	public static void rank(WordCounter counter, boolean withStats, LineSink out, Metrics metrics) throws Exception {
+		int[] ids = rankOrder(counter, metrics);
+		Metrics.Timer timer = metrics.start(Metrics.Stage.WRITE);
+		Ranking ranking = new Ranking(out, withStats, counter.tokens());
+		for (int id : ids)
+			ranking.add(counter.word(id), counter.count(id));
+		ranking.finish();
+		timer.stop(ids.length, 0);
+	}
+
+	private static int[] rankOrder(WordCounter counter, Metrics metrics) {
+		Metrics.Timer timer = metrics.start(Metrics.Stage.SORT);
+		int[] ids = counter.rankOrder();
+		timer.stop(ids.length, 0);
+		return ids;
+	}
+
+	/**
+	 * Counts lemmas of tagger output lines in memory, on several threads if
+	 * parallel, within a memory budget with an {@link ExternalCounter} or
+	 * approximately with a {@link TopKCounter}.
+	 */
+	static class LemmaCounter implements LineSink {
+		private WordCounter counter;
+		private final ParallelCounter parallelCounter;
+		private final ExternalCounter externalCounter;
+		private final TopKCounter topKCounter;
+		private final TaggerOutput parser = new TaggerOutput();
+
+		LemmaCounter(boolean parallel, long memoryBudget) {
+			if (parallel) {
+				parallelCounter = new ParallelCounter(Runtime.getRuntime().availableProcessors());
+				externalCounter = null;
+			} else if (memoryBudget > 0) {
+				parallelCounter = null;
+				externalCounter = new ExternalCounter(memoryBudget);
+			} else {
+				counter = new WordCounter();
+				parallelCounter = null;
+				externalCounter = null;
+			}
+			topKCounter = null;
+		}
+
+		LemmaCounter(TopKCounter topKCounter) {
+			parallelCounter = null;
+			externalCounter = null;
+			this.topKCounter = topKCounter;
+		}
+
+		public void line(String line) throws Exception {
+			if (parallelCounter != null) {
+				parallelCounter.add(line);
+				return;
+			}
+			parser.parse(line);
+			if (externalCounter != null)
+				externalCounter.add(line, parser.lemmaStart(), parser.lemmaEnd());
+			else if (topKCounter != null)
+				topKCounter.add(line.substring(parser.lemmaStart(), parser.lemmaEnd()));
+			else
+				counter.add(line, parser.lemmaStart(), parser.lemmaEnd());
+		}
+
+		public void close() {
+		}
+
+		/**
+		 * Adds occurrences of a word counted elsewhere; only for counting that
+		 * is neither parallel nor approximate.
+		 */
+		void add(String word, int occurrences, long firstSeen) throws IOException {
+			if (externalCounter != null)
+				externalCounter.add(word, occurrences, firstSeen);
+			else
+				counter.add(word, occurrences, firstSeen);
+		}
+
+		/**
+		 * Stops counting threads and deletes counts spilled to disk; also
+		 * called when counting or ranking failed.
+		 */
+		void cancel() {
+			if (parallelCounter != null)
+				parallelCounter.cancel();
+			if (externalCounter != null)
+				externalCounter.delete();
+		}
+
+		void finish() throws Exception {
+			if (parallelCounter != null)
+				counter = parallelCounter.finish();
+			else if (externalCounter != null && !externalCounter.isSpilled())
+				counter = externalCounter.getCounter();
+		}
+
+		/**
+		 * Returns the exact counts of a finished counter, or null if they were
+		 * spilled to disk or are approximate.
+		 */
+		WordCounter getCounter() {
+			return counter;
+		}
+
+		/**
+		 * Ranks the counts of a finished counter. Approximate counts are always
+		 * ranked with stats and error bounds.
+		 */
+		void rank(boolean withStats, LineSink out, Metrics metrics, Cancellable cancellable) throws Exception {
+			if (counter != null) {
+				Sieve.rank(counter, withStats, out, metrics);
+			} else if (topKCounter != null) {
+				Metrics.Timer timer = metrics.start(Metrics.Stage.SORT);
+				topKCounter.rank(out);
+				timer.stop();
+			} else {
+				externalCounter.rank(withStats, out, metrics, cancellable);
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package sieve;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.UnexpectedException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class Tagger {
+
+	private static String OS = System.getProperty("os.name").toLowerCase();
+
+	private final String language;
+	private final String path;
+	private final int processes;
+
+	public Tagger(String language, String path) {
+		this(language, path, 1);
+	}
+
+	public Tagger(String language, String path, int processes) {
+		this.language = language;
+		this.path = path;
+		this.processes = processes;
+	}
+
+	public boolean isPooled() {
+		return processes > 1 && readsStandardInput();
+	}
+
+	public boolean readsStandardInput() {
+		return isUnix();
+	}
+
+	public Process start() throws IOException {
+		if (!readsStandardInput())
+			throw new UnexpectedException("The tagger cannot read standard input on this operating system");
+		if (path == null)
+			throw new IOException("No tagger was specified for " + language);
+		return Runtime.getRuntime().exec(path);
+	}
+
+	public Process start(File input) throws IOException {
+		if (input.getAbsolutePath().contains(" ")) {
+			throw new IOException("Cannot process files that have spaces in their path");
+		}
+		if (isUnix()) {
+			if (path == null)
+				throw new IOException("No tagger was specified for " + language);
+			return Runtime.getRuntime().exec(path + " " + input.getAbsolutePath());
+		} else if (isWindows()) {
+			return Runtime.getRuntime().exec(
+					"cmd.exe /c tag-" + language.toLowerCase() + " " + input.getAbsolutePath());
+		} else {
+			throw new UnexpectedException("Could not recognize the operating system");
+		}
+	}
+
+	/**
+	 * Kills the process and everything it started, such as the stages of a
+	 * tagger script's pipeline. The process is killed through its handle:
+	 * {@link Process#destroy()} also closes its standard input, which blocks
+	 * while another thread is stuck writing to it.
+	 */
+	public static void destroy(Process process) {
+		ProcessHandle handle = process.toHandle();
+		List<ProcessHandle> descendants = new ArrayList<ProcessHandle>();
+		Iterator<ProcessHandle> it = handle.descendants().iterator();
+		while (it.hasNext())
+			descendants.add(it.next());
+		handle.destroyForcibly();
+		for (ProcessHandle descendant : descendants)
+			descendant.destroyForcibly();
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public int getProcesses() {
+		return processes;
+	}
+
+	private static boolean isWindows() {
+		return (OS.indexOf("win") >= 0);
+	}
+
+	private static boolean isUnix() {
+		return (OS.indexOf("nix") >= 0 || OS.indexOf("nux") >= 0 || OS.indexOf("aix") > 0);
+	}
+}
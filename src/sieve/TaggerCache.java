@@ -0,0 +1,228 @@
+package sieve;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Tagger output stored on disk under a content hash of the tagged file, the
+ * tagger and the language. Output lines are dictionary-encoded: every line is
+ * written as a varint id, followed by its text the first time it occurs, and
+ * the whole stream is deflated. Entries are evicted least recently used first
+ * once the cache grows over its size limit.
+ */
+public class TaggerCache {
+
+	private static final String SUFFIX = ".tagged";
+	private static final int MAGIC = 0x53544331;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Map<String, String> digests = new HashMap<String, String>();
+
+	private final File directory;
+	private final long maxBytes;
+
+	public TaggerCache(File directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	public String key(File input, Tagger tagger) throws IOException {
+		String fileKey = input.getAbsolutePath() + "|" + input.length() + "|" + input.lastModified();
+		String contentDigest;
+		synchronized (digests) {
+			contentDigest = digests.get(fileKey);
+		}
+		if (contentDigest == null) {
+			MessageDigest digest = sha256();
+			InputStream in = new FileInputStream(input);
+			try {
+				byte[] buffer = new byte[1 << 16];
+				int n;
+				while ((n = in.read(buffer)) > 0)
+					digest.update(buffer, 0, n);
+			} finally {
+				in.close();
+			}
+			contentDigest = hex(digest.digest());
+			synchronized (digests) {
+				digests.put(fileKey, contentDigest);
+			}
+		}
+		MessageDigest digest = sha256();
+		digest.update((contentDigest + "\0" + tagger.getPath() + "\0" + tagger.getLanguage()).getBytes(UTF8));
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Passes the cached tagger output stored under the key to the sink.
+	 * Returns false, without touching the sink, if there is no such entry.
+	 */
+	public boolean replay(String key, LineSink output, Cancellable cancellable) throws Exception {
+		File file = new File(directory, key + SUFFIX);
+		if (!file.isFile())
+			return false;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(
+				new FileInputStream(file)), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC)
+				return false;
+			List<String> dictionary = new ArrayList<String>();
+			int id;
+			while ((id = readVarint(in)) != 0 && !cancellable.isCancelled()) {
+				if (id > dictionary.size()) {
+					byte[] bytes = new byte[readVarint(in)];
+					in.readFully(bytes);
+					dictionary.add(new String(bytes, UTF8));
+				}
+				output.line(dictionary.get(id - 1));
+			}
+		} finally {
+			in.close();
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	public Recorder record(String key, LineSink output) throws IOException {
+		return new Recorder(key, output);
+	}
+
+	public void clear() {
+		File[] files = directory.listFiles();
+		if (files != null)
+			for (File file : files)
+				if (file.getName().endsWith(SUFFIX))
+					file.delete();
+	}
+
+	private void evict() {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+			}
+		});
+		long total = 0;
+		for (File file : files)
+			if (file.getName().endsWith(SUFFIX))
+				total += file.length();
+		for (int i = 0; i < files.length && total > maxBytes; i++) {
+			if (!files[i].getName().endsWith(SUFFIX))
+				continue;
+			total -= files[i].length();
+			files[i].delete();
+		}
+	}
+
+	/**
+	 * Passes tagger output on to another sink while writing it to the cache.
+	 * The entry becomes visible only after {@link #commit()}; closing an
+	 * uncommitted recorder throws the recorded output away.
+	 */
+	public class Recorder implements LineSink {
+		private final String key;
+		private final LineSink output;
+		private final File file;
+		private final DataOutputStream out;
+		private final WordCounter dictionary = new WordCounter();
+		private boolean closed;
+
+		Recorder(String key, LineSink output) throws IOException {
+			this.key = key;
+			this.output = output;
+			directory.mkdirs();
+			file = File.createTempFile("tagged", ".tmp", directory);
+			out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(file),
+					new Deflater(Deflater.BEST_SPEED)), 1 << 16));
+			out.writeInt(MAGIC);
+		}
+
+		public void line(String line) throws Exception {
+			int known = dictionary.size();
+			int id = dictionary.add(line);
+			writeVarint(out, id + 1);
+			if (id == known) {
+				byte[] bytes = line.getBytes(UTF8);
+				writeVarint(out, bytes.length);
+				out.write(bytes);
+			}
+			output.line(line);
+		}
+
+		public void commit() throws IOException {
+			writeVarint(out, 0);
+			out.close();
+			closed = true;
+			File target = new File(directory, key + SUFFIX);
+			target.delete();
+			if (!file.renameTo(target))
+				throw new IOException("Could not store tagger output in '" + directory + "'");
+			evict();
+		}
+
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				out.close();
+				file.delete();
+			}
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder s = new StringBuilder();
+		for (byte b : bytes)
+			s.append(String.format("%02x", b));
+		return s.toString();
+	}
+
+	private static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarint(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+	}
+}
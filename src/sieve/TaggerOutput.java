@@ -0,0 +1,90 @@
+package sieve;
+
+/**
+ * Reads lines of TreeTagger output, "word TAB POS TAB lemma". The columns
+ * are found as index ranges of the line, so counting a lemma needs no
+ * substring or split array. A lemma the tagger does not know,
+ * {@value #UNKNOWN}, is counted as the word itself, and of several lemmas
+ * "a|b" the first one is counted. A line without tabs, such as an SGML tag
+ * the tagger passes through, is counted whole. Trailing tabs are ignored,
+ * so a line whose lemma column is empty counts its last non-empty column,
+ * as splitting the line at tabs always did.
+ * <p>
+ * A parser keeps the ranges of the last parsed line and is used by one
+ * thread at a time.
+ */
+public class TaggerOutput {
+
+	public static final String UNKNOWN = "<unknown>";
+
+	private int wordEnd;
+	private int posStart;
+	private int posEnd;
+	private int lemmaStart;
+	private int lemmaEnd;
+
+	public void parse(String line) {
+		int length = line.length();
+		while (length > 0 && line.charAt(length - 1) == '\t')
+			length--;
+		int firstTab = line.indexOf('\t');
+		if (firstTab < 0 || firstTab >= length) {
+			wordEnd = length;
+			posStart = posEnd = length;
+			lemmaStart = 0;
+			lemmaEnd = length;
+			return;
+		}
+		int lastTab = line.lastIndexOf('\t', length - 1);
+		wordEnd = firstTab;
+		lemmaStart = lastTab + 1;
+		posStart = lastTab > firstTab ? firstTab + 1 : lemmaStart;
+		posEnd = lastTab > firstTab ? lastTab : lemmaStart;
+		lemmaEnd = length;
+		if (lemmaEnd - lemmaStart == UNKNOWN.length() && line.startsWith(UNKNOWN, lemmaStart)) {
+			lemmaStart = 0;
+			lemmaEnd = wordEnd;
+			return;
+		}
+		int bar = line.indexOf('|', lemmaStart);
+		if (bar > lemmaStart)
+			lemmaEnd = bar;
+	}
+
+	/**
+	 * Returns the end of the word column of the last parsed line, which
+	 * starts the line.
+	 */
+	public int wordEnd() {
+		return wordEnd;
+	}
+
+	/**
+	 * Returns the start of the POS column, equal to its end if the line has
+	 * none.
+	 */
+	public int posStart() {
+		return posStart;
+	}
+
+	public int posEnd() {
+		return posEnd;
+	}
+
+	public int lemmaStart() {
+		return lemmaStart;
+	}
+
+	public int lemmaEnd() {
+		return lemmaEnd;
+	}
+
+	/**
+	 * Returns the lemma of a line as a new string, for callers that keep it.
+	 */
+	public static String lemma(String line) {
+		TaggerOutput parser = new TaggerOutput();
+		parser.parse(line);
+		return line.substring(parser.lemmaStart, parser.lemmaEnd);
+	}
+}
@@ -0,0 +1,342 @@
+package sieve;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tags text with several processes of one tagger at once. Text is cut at
+ * sentence boundaries into as many contiguous parts as there are processes,
+ * each part is tagged by a process of its own and the output of the parts
+ * is handed on in the original order. The number of processes running at a
+ * time is shared by all jobs using the tagger.
+ * <p>
+ * A part is spooled to a file that its process reads as it would read a
+ * whole input, so every process starts once per part, flushes all of its
+ * output before it exits whatever it buffers, and fails the part with its
+ * error output if it exits with an error. Output of a part is spooled as
+ * well until the parts before it have been handed on.
+ */
+public class TaggerPool {
+
+	private static final long MIN_PART_SIZE = 1024 * 1024;
+	private static final long UNKNOWN_SIZE_PART_SIZE = 64 * 1024 * 1024;
+	private static final long MAX_SENTENCE_SIZE = 1024 * 1024;
+
+	private static final Map<String, TaggerPool> pools = new HashMap<String, TaggerPool>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				synchronized (pools) {
+					for (TaggerPool pool : pools.values())
+						pool.destroy();
+				}
+			}
+		});
+	}
+
+	private final Tagger tagger;
+	private final List<Part> running = new ArrayList<Part>();
+	private int processes;
+
+	private TaggerPool(Tagger tagger) {
+		this.tagger = tagger;
+	}
+
+	public static TaggerPool get(Tagger tagger) {
+		synchronized (pools) {
+			String key = tagger.getLanguage() + "|" + tagger.getPath();
+			TaggerPool pool = pools.get(key);
+			if (pool == null) {
+				pool = new TaggerPool(tagger);
+				pools.put(key, pool);
+			}
+			pool.resize(tagger.getProcesses());
+			return pool;
+		}
+	}
+
+	/**
+	 * Starts tagging a text given line by line. Tagger output lines are passed
+	 * to {@code output} in input order; closing the returned sink waits until
+	 * all of them have been delivered.
+	 *
+	 * @param size
+	 *            about the number of bytes of the text, which it is cut into
+	 *            parts by, or -1 if it is not known
+	 */
+	public Session open(LineSink output, Metrics metrics, long size) {
+		long partSize = size < 0 ? UNKNOWN_SIZE_PART_SIZE : Math.max(MIN_PART_SIZE, size / getProcesses() + 1);
+		return new Session(output, metrics, partSize);
+	}
+
+	private synchronized int getProcesses() {
+		return processes;
+	}
+
+	/**
+	 * Sets the number of processes running at a time. Processes beyond it
+	 * finish the part they are tagging.
+	 */
+	private synchronized void resize(int count) {
+		processes = count;
+		notifyAll();
+	}
+
+	/**
+	 * Starts tagging the part once fewer processes than the limit are
+	 * running, draining its output on a thread of its own.
+	 */
+	private void start(final Part part) throws Exception {
+		synchronized (this) {
+			while (running.size() >= processes) {
+				part.session.check();
+				wait(100);
+			}
+			part.session.check();
+			part.process = tagger.start(part.input);
+			running.add(part);
+		}
+		startDaemon("tagger-pool-part", new Runnable() {
+			public void run() {
+				tag(part);
+			}
+		});
+	}
+
+	private void tag(Part part) {
+		ProcessReader reader = new ProcessReader(part.process, part.session.metrics);
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(new FileWriter(part.output));
+			String[] batch;
+			while ((batch = reader.next()) != null)
+				for (String line : batch)
+					out.println(line);
+			out.close();
+			if (out.checkError())
+				throw new IOException("Could not spool tagger output to '" + part.output + "'");
+			int status = part.process.waitFor();
+			if (status != 0)
+				throw new IOException("The tagger exited with status " + status + ":\n" + reader.getErrorOutput());
+		} catch (Exception e) {
+			part.error = e instanceof IOException ? (IOException) e : new IOException(e);
+			Tagger.destroy(part.process);
+		} finally {
+			reader.close();
+			if (out != null)
+				out.close();
+			part.input.delete();
+			synchronized (this) {
+				running.remove(part);
+				notifyAll();
+			}
+			part.done.countDown();
+		}
+	}
+
+	private synchronized void destroy() {
+		for (Part part : running)
+			Tagger.destroy(part.process);
+	}
+
+	/**
+	 * Kills the processes tagging parts of the session.
+	 */
+	private synchronized void destroyProcessesOf(Session session) {
+		for (Part part : running)
+			if (part.session == session)
+				Tagger.destroy(part.process);
+		notifyAll();
+	}
+
+	public class Session implements LineSink {
+		private final LineSink output;
+		private final Metrics metrics;
+		private final long partSize;
+		private final BlockingQueue<Part> ordered = new LinkedBlockingQueue<Part>();
+		private final List<Part> parts = new ArrayList<Part>();
+		private final Thread collector;
+		private volatile Exception failure;
+		private volatile boolean cancelled;
+		private Part part;
+		private long size;
+
+		Session(LineSink output, Metrics metrics, long partSize) {
+			this.output = output;
+			this.metrics = metrics;
+			this.partSize = partSize;
+			collector = new Thread("tagger-pool-collector") {
+				public void run() {
+					collect();
+				}
+			};
+			collector.setDaemon(true);
+			collector.start();
+		}
+
+		public void line(String line) throws Exception {
+			if (part == null) {
+				check();
+				part = new Part(this);
+				synchronized (parts) {
+					parts.add(part);
+				}
+				size = 0;
+			}
+			part.in.println(line);
+			size += line.length() + 1;
+			if (size >= partSize && (endsSentence(line) || size >= partSize + MAX_SENTENCE_SIZE))
+				submit();
+		}
+
+		public void close() throws Exception {
+			if (part != null && !cancelled)
+				submit();
+			ordered.put(Part.LAST);
+			collector.join();
+			if (failure != null || cancelled) {
+				discard();
+				check();
+			}
+		}
+
+		/**
+		 * Drops the parts not tagged yet, kills the processes tagging the
+		 * others and stops delivering output. Closing the session afterwards
+		 * fails with the resulting error.
+		 */
+		public void cancel() {
+			cancelled = true;
+			collector.interrupt();
+			discard();
+		}
+
+		/**
+		 * Throws if the session failed or was cancelled.
+		 */
+		void check() throws Exception {
+			if (failure != null)
+				throw failure;
+			if (cancelled)
+				throw new InterruptedException("Tagging was cancelled");
+		}
+
+		private void submit() throws Exception {
+			Part submitted = part;
+			part = null;
+			submitted.in.close();
+			if (submitted.in.checkError())
+				throw new IOException("Could not spool tagger input to '" + submitted.input + "'");
+			check();
+			start(submitted);
+			ordered.put(submitted);
+		}
+
+		private void collect() {
+			try {
+				Part next;
+				while ((next = ordered.take()) != Part.LAST) {
+					while (!next.done.await(1, TimeUnit.SECONDS))
+						if (cancelled)
+							throw new InterruptedException("Tagging was cancelled");
+					if (next.error != null)
+						throw next.error;
+					BufferedReader in = new BufferedReader(new FileReader(next.output));
+					try {
+						String line;
+						while ((line = in.readLine()) != null && !cancelled)
+							output.line(line);
+					} finally {
+						in.close();
+					}
+					next.delete();
+					synchronized (parts) {
+						parts.remove(next);
+					}
+				}
+			} catch (Exception e) {
+				failure = e;
+				discard();
+			}
+		}
+
+		/**
+		 * Kills the processes of the session and deletes the files of the
+		 * parts not handed on.
+		 */
+		private void discard() {
+			destroyProcessesOf(this);
+			synchronized (parts) {
+				for (Part part : parts) {
+					part.in.close();
+					part.delete();
+				}
+				parts.clear();
+			}
+		}
+	}
+
+	private static boolean endsSentence(String line) {
+		String trimmed = line.trim();
+		if (trimmed.isEmpty())
+			return true;
+		char last = trimmed.charAt(trimmed.length() - 1);
+		return last == '.' || last == '!' || last == '?';
+	}
+
+	private static class Part {
+		static final Part LAST = new Part();
+
+		final Session session;
+		final File input;
+		final File output;
+		final PrintWriter in;
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile Process process;
+		volatile IOException error;
+
+		private Part() {
+			session = null;
+			input = null;
+			output = null;
+			in = null;
+		}
+
+		Part(Session session) throws IOException {
+			this.session = session;
+			input = File.createTempFile("sieve", ".tmp");
+			try {
+				output = File.createTempFile("sieve", ".tmp");
+				in = new PrintWriter(new FileWriter(input));
+			} catch (IOException e) {
+				input.delete();
+				throw e;
+			}
+		}
+
+		void delete() {
+			input.delete();
+			output.delete();
+		}
+	}
+
+	private static Thread startDaemon(String name, Runnable runnable) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+}
@@ -0,0 +1,191 @@
+package sieve;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Approximate counts of the most frequent words in fixed memory, with the
+ * Space-Saving algorithm. A fixed number of words is monitored, at least K
+ * and 1/error; a word that is not monitored replaces the one with the lowest
+ * count. Counts never underestimate: every word is reported with the count
+ * and the error it may overestimate by, at most error times the number of
+ * counted words, and every word occurring more often than that is
+ * monitored and reported, even beyond the first K.
+ * <p>
+ * With the optional Count-Min sketch a replacing word starts from the
+ * sketch's estimate of its earlier occurrences if that is lower than the
+ * replaced count, which gives tighter bounds when the sketch is wide enough.
+ */
+public class TopKCounter {
+
+	private static final int SKETCH_DEPTH = 5;
+
+	private final int k;
+	private final String[] words;
+	private final int[] counts;
+	private final int[] errors;
+	private final int[] heap;
+	private final int[] heapPosition;
+	private final Map<String, Integer> slots;
+	private final CountMinSketch sketch;
+	private int size;
+	private int maxEvicted;
+	private long tokens;
+
+	/**
+	 * @param k
+	 *            number of words to report
+	 * @param error
+	 *            bound on the overestimate of every count as a fraction of the
+	 *            counted words
+	 * @param sketch
+	 *            whether to tighten the bounds with a Count-Min sketch
+	 */
+	public TopKCounter(int k, double error, boolean sketch) {
+		if (k < 1 || error <= 0 || error >= 1)
+			throw new IllegalArgumentException("Top-K needs K > 0 and an error between 0 and 1");
+		this.k = k;
+		int capacity = (int) Math.max(k, Math.ceil(1 / error));
+		words = new String[capacity];
+		counts = new int[capacity];
+		errors = new int[capacity];
+		heap = new int[capacity];
+		heapPosition = new int[capacity];
+		slots = new HashMap<String, Integer>(capacity * 2);
+		this.sketch = sketch ? new CountMinSketch((int) Math.ceil(Math.E / error), SKETCH_DEPTH) : null;
+	}
+
+	public void add(String word) {
+		tokens++;
+		int earlier = sketch != null ? sketch.add(word) - 1 : Integer.MAX_VALUE;
+		Integer slot = slots.get(word);
+		if (slot != null) {
+			counts[slot]++;
+			siftDown(heapPosition[slot]);
+			return;
+		}
+		if (size < words.length) {
+			slot = size++;
+			heap[slot] = slot;
+			heapPosition[slot] = slot;
+		} else {
+			slot = heap[0];
+			slots.remove(words[slot]);
+			maxEvicted = Math.max(maxEvicted, counts[slot]);
+		}
+		// an unmonitored word occurred at most as often as the highest count
+		// ever evicted, since it was last counted at most that much
+		int error = Math.min(maxEvicted, earlier);
+		words[slot] = word;
+		counts[slot] = error + 1;
+		errors[slot] = error;
+		slots.put(word, slot);
+		siftUp(heapPosition[slot]);
+		siftDown(heapPosition[slot]);
+	}
+
+	/**
+	 * Returns the count every word that is not monitored may have reached.
+	 */
+	public int maxUnmonitoredCount() {
+		return size < words.length ? 0 : maxEvicted;
+	}
+
+	/**
+	 * Passes the K words with the highest counts to the sink as "rank word
+	 * count error" lines: the word occurred between count - error and count
+	 * times. Equal counts are ordered by the lower error first. Once words
+	 * have been evicted, the words after the first K are passed on as well
+	 * while their counts are higher than the {@link #maxUnmonitoredCount()}.
+	 * Two {@value Ranking#SUMMARY_PREFIX} lines follow with the number of
+	 * counted words and the count no word left out can have exceeded.
+	 */
+	public void rank(LineSink out) throws Exception {
+		Integer[] order = new Integer[size];
+		for (int slot = 0; slot < size; slot++)
+			order[slot] = slot;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (counts[a] != counts[b])
+					return counts[a] > counts[b] ? -1 : 1;
+				return errors[a] - errors[b];
+			}
+		});
+		int unmonitored = maxUnmonitoredCount();
+		int reported = 0;
+		while (reported < size && (reported < k || unmonitored > 0 && counts[order[reported]] > unmonitored)) {
+			int slot = order[reported++];
+			out.line(reported + " " + words[slot] + " " + counts[slot] + " " + errors[slot]);
+		}
+		int unreported = Math.max(unmonitored, reported < size ? counts[order[reported]] : 0);
+		out.line(Ranking.SUMMARY_PREFIX + " tokens " + tokens);
+		out.line(Ranking.SUMMARY_PREFIX + " unlisted at most " + unreported);
+	}
+
+	private void siftUp(int position) {
+		int slot = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (counts[heap[parent]] <= counts[slot])
+				break;
+			move(heap[parent], position);
+			position = parent;
+		}
+		move(slot, position);
+	}
+
+	private void siftDown(int position) {
+		int slot = heap[position];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]])
+				child++;
+			if (counts[heap[child]] >= counts[slot])
+				break;
+			move(heap[child], position);
+			position = child;
+		}
+		move(slot, position);
+	}
+
+	private void move(int slot, int position) {
+		heap[position] = slot;
+		heapPosition[slot] = position;
+	}
+
+	/**
+	 * Counters in rows of hashed cells; the lowest of a word's cells is an
+	 * upper bound on its count.
+	 */
+	private static class CountMinSketch {
+		private final int[][] rows;
+		private final int width;
+
+		CountMinSketch(int width, int depth) {
+			this.width = width;
+			rows = new int[depth][width];
+		}
+
+		int add(String word) {
+			int hash = word.hashCode();
+			int estimate = Integer.MAX_VALUE;
+			for (int row = 0; row < rows.length; row++) {
+				int cell = ++rows[row][index(hash, row)];
+				estimate = Math.min(estimate, cell);
+			}
+			return estimate;
+		}
+
+		private int index(int hash, int row) {
+			int h = hash * (0x9E3779B9 + 2 * row) + row * 0x85EBCA6B;
+			h ^= h >>> 15;
+			h *= 0xC2B2AE35;
+			h ^= h >>> 13;
+			return (h & 0x7FFFFFFF) % width;
+		}
+	}
+}
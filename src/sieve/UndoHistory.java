@@ -0,0 +1,273 @@
+package sieve;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Results of the actions performed on a loaded file, for undo and redo. Every
+ * result is kept as a gzip-compressed snapshot: small snapshots stay in
+ * memory until the memory budget is used up, larger and older ones are
+ * spilled to disk. Only the current result exists as a plain file. The
+ * oldest states are forgotten once the history is deeper or bigger than
+ * allowed.
+ */
+public class UndoHistory {
+
+	private final File directory;
+	private final int maxDepth;
+	private final long maxBytes;
+	private final long memoryBytes;
+	private final List<Snapshot> states = new ArrayList<Snapshot>();
+	private int index = -1;
+	private File current;
+	private int fileCounter;
+
+	public UndoHistory(File directory, int maxDepth, long maxBytes, long memoryBytes) {
+		this.directory = directory;
+		this.maxDepth = maxDepth;
+		this.maxBytes = maxBytes;
+		this.memoryBytes = memoryBytes;
+	}
+
+	public void reset(File original) {
+		clear();
+		states.add(new Snapshot(original));
+		index = 0;
+		current = original;
+	}
+
+	/**
+	 * Makes the given file, which the history takes over, the current result.
+	 * States that could have been redone are dropped.
+	 */
+	public void push(File result) throws IOException {
+		Snapshot snapshot = compress(result);
+		while (states.size() > index + 1)
+			states.remove(states.size() - 1).delete();
+		states.add(snapshot);
+		index++;
+		replaceCurrent(result);
+		trim();
+	}
+
+	public File current() {
+		return current;
+	}
+
+	public boolean canUndo() {
+		return index > 0;
+	}
+
+	public boolean canRedo() {
+		return index < states.size() - 1;
+	}
+
+	public File undo() throws IOException {
+		File file = materialize(states.get(index - 1));
+		index--;
+		replaceCurrent(file);
+		return current;
+	}
+
+	public File redo() throws IOException {
+		File file = materialize(states.get(index + 1));
+		index++;
+		replaceCurrent(file);
+		return current;
+	}
+
+	/**
+	 * Returns a fresh file in the history's directory for an action to write
+	 * its result to.
+	 */
+	public File newFile() throws IOException {
+		return newFile("tmp", "");
+	}
+
+	/**
+	 * Like {@link #newFile()}, with a name ending with the given suffix.
+	 */
+	public File newFile(String suffix) throws IOException {
+		return newFile("tmp", suffix);
+	}
+
+	private File newFile(String prefix, String suffix) throws IOException {
+		if (!directory.isDirectory()) {
+			if (directory.exists())
+				throw new IOException("'" + directory + "' directory is needed but such file exists");
+			directory.mkdirs();
+		}
+		File file;
+		do {
+			file = new File(directory, prefix + (fileCounter++) + suffix);
+		} while (file.exists());
+		return file;
+	}
+
+	public void clear() {
+		for (Snapshot snapshot : states)
+			snapshot.delete();
+		states.clear();
+		index = -1;
+		replaceCurrent(null);
+	}
+
+	private void replaceCurrent(File file) {
+		if (current != null && !current.equals(file) && !isOriginal(current))
+			current.delete();
+		current = file;
+	}
+
+	private boolean isOriginal(File file) {
+		return !states.isEmpty() && file.equals(states.get(0).original);
+	}
+
+	private void trim() throws IOException {
+		long total = 0;
+		for (Snapshot snapshot : states)
+			total += snapshot.size;
+		while (index > 0 && (states.size() > maxDepth + 1 || total > maxBytes)) {
+			Snapshot oldest = states.remove(0);
+			total -= oldest.size;
+			oldest.delete();
+			index--;
+		}
+		long inMemory = 0;
+		for (int i = states.size() - 1; i >= 0; i--) {
+			Snapshot snapshot = states.get(i);
+			if (snapshot.data == null)
+				continue;
+			if (inMemory + snapshot.size <= memoryBytes)
+				inMemory += snapshot.size;
+			else
+				spill(snapshot);
+		}
+	}
+
+	private Snapshot compress(File file) throws IOException {
+		SpillingOutputStream buffer = new SpillingOutputStream();
+		InputStream in = new FileInputStream(file);
+		try {
+			OutputStream out = new GZIPOutputStream(buffer, 1 << 16);
+			try {
+				copy(in, out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		return buffer.toSnapshot();
+	}
+
+	private void spill(Snapshot snapshot) throws IOException {
+		File file = newFile("undo", "");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(snapshot.data);
+		} finally {
+			out.close();
+		}
+		snapshot.spilled = file;
+		snapshot.data = null;
+	}
+
+	private File materialize(Snapshot snapshot) throws IOException {
+		if (snapshot.original != null)
+			return snapshot.original;
+		File file = newFile();
+		InputStream in = new GZIPInputStream(snapshot.data != null ? new ByteArrayInputStream(snapshot.data)
+				: new BufferedInputStream(new FileInputStream(snapshot.spilled)), 1 << 16);
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+			try {
+				copy(in, out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		return file;
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[1 << 16];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			out.write(buffer, 0, n);
+	}
+
+	private static class Snapshot {
+		final File original;
+		byte[] data;
+		File spilled;
+		long size;
+
+		Snapshot(File original) {
+			this.original = original;
+		}
+
+		void delete() {
+			if (spilled != null)
+				spilled.delete();
+			data = null;
+		}
+	}
+
+	/**
+	 * Collects compressed bytes in memory until they exceed the memory budget
+	 * and continues in a spill file from then on.
+	 */
+	private class SpillingOutputStream extends OutputStream {
+		private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+		private File file;
+		private OutputStream out;
+		private long size;
+
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			size += len;
+			if (out == null && size > memoryBytes) {
+				file = newFile("undo", "");
+				out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+				memory.writeTo(out);
+				memory = null;
+			}
+			if (out != null)
+				out.write(b, off, len);
+			else
+				memory.write(b, off, len);
+		}
+
+		public void close() throws IOException {
+			if (out != null)
+				out.close();
+		}
+
+		Snapshot toSnapshot() {
+			Snapshot snapshot = new Snapshot(null);
+			snapshot.size = size;
+			if (file != null)
+				snapshot.spilled = file;
+			else
+				snapshot.data = memory.toByteArray();
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,366 @@
+package sieve;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table counting occurrences of words. Counters are kept
+ * in primitive arrays and every distinct word gets a dense id in the order of
+ * its first occurrence, so iterating ids 0..size()-1 visits the words exactly
+ * as they first appeared in the counted stream. The stream position of the
+ * first occurrence is remembered as well, which lets counters built over
+ * different parts of a stream be merged without losing that order.
+ * <p>
+ * Words are stored as UTF-8 bytes in an arena of large byte arrays and found
+ * by offset, so a distinct word costs its bytes and a few array slots rather
+ * than a String object; a String is made only when {@link #word(int)} asks
+ * for one.
+ */
+public class WordCounter {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int FIRST_PAGE_SIZE = 1 << 14;
+	private static final int MAX_PAGE_SIZE = 1 << 20;
+	private static final int RADIX_BITS = 11;
+	private static final int RADIX = 1 << RADIX_BITS;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private int[] table;
+	private int[] hashes;
+	private long[] offsets;
+	private int[] lengths;
+	private int[] counts;
+	private long[] firstSeen;
+	private int size;
+	private long tokens;
+
+	private byte[][] pages = new byte[4][];
+	private int pageCount;
+	private int pagePosition;
+	private byte[] scratch = new byte[64];
+
+	public WordCounter() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public WordCounter(int expectedWords) {
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < expectedWords * 2)
+			capacity <<= 1;
+		table = new int[capacity];
+		hashes = new int[capacity / 2];
+		offsets = new long[capacity / 2];
+		lengths = new int[capacity / 2];
+		counts = new int[capacity / 2];
+		firstSeen = new long[capacity / 2];
+	}
+
+	public int add(String word) {
+		return add(word, 1, tokens);
+	}
+
+	public int add(String word, int occurrences) {
+		return add(word, occurrences, tokens);
+	}
+
+	public int add(String word, int occurrences, long position) {
+		return add(word, 0, word.length(), occurrences, position);
+	}
+
+	/**
+	 * Counts the word at the given range of the text, such as a column of a
+	 * tagger output line, without making a string of it.
+	 */
+	public int add(String text, int from, int to) {
+		return add(text, from, to, 1, tokens);
+	}
+
+	public int add(String text, int from, int to, int occurrences, long position) {
+		int length = encode(text, from, to);
+		return add(scratch, 0, length, hash(scratch, 0, length), occurrences, position);
+	}
+
+	public void merge(WordCounter other) {
+		for (int id = 0; id < other.size; id++) {
+			long offset = other.offsets[id];
+			add(other.pages[(int) (offset >>> 32)], (int) offset, other.lengths[id], other.hashes[id], other.counts[id],
+					other.firstSeen[id]);
+		}
+	}
+
+	public int get(String word) {
+		int length = encode(word, 0, word.length());
+		int id = find(scratch, 0, length, hash(scratch, 0, length));
+		return id < 0 ? 0 : counts[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public String word(int id) {
+		long offset = offsets[id];
+		return new String(pages[(int) (offset >>> 32)], (int) offset, lengths[id], UTF8);
+	}
+
+	public int count(int id) {
+		return counts[id];
+	}
+
+	public long firstSeen(int id) {
+		return firstSeen[id];
+	}
+
+	public long tokens() {
+		return tokens;
+	}
+
+	public int[] appearanceOrder() {
+		int[] ids = new int[size];
+		boolean ordered = true;
+		for (int id = 0; id < size; id++) {
+			ids[id] = id;
+			if (id > 0 && firstSeen[id] < firstSeen[id - 1])
+				ordered = false;
+		}
+		if (!ordered)
+			sortByFirstSeen(ids, new int[size], 0, size);
+		return ids;
+	}
+
+	/**
+	 * Returns the ids by descending count, words with equal counts in the
+	 * order of their first appearance. Counts are sorted in linear time with
+	 * a stable radix sort of {@value #RADIX_BITS} bits per pass, so a table
+	 * whose highest count fits one digit takes a single counting pass.
+	 */
+	public int[] rankOrder() {
+		int[] ids = appearanceOrder();
+		int max = 0;
+		for (int id = 0; id < size; id++)
+			max = Math.max(max, counts[id]);
+		int[] buffer = new int[size];
+		int[] starts = new int[RADIX + 1];
+		for (int shift = 0; shift == 0 || shift < 32 && (max >>> shift) != 0; shift += RADIX_BITS) {
+			Arrays.fill(starts, 0);
+			for (int i = 0; i < size; i++)
+				starts[digit(max - counts[ids[i]], shift) + 1]++;
+			for (int d = 0; d < RADIX; d++)
+				starts[d + 1] += starts[d];
+			for (int i = 0; i < size; i++)
+				buffer[starts[digit(max - counts[ids[i]], shift)]++] = ids[i];
+			int[] sorted = buffer;
+			buffer = ids;
+			ids = sorted;
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the ids in the order of the UTF-8 bytes of their words,
+	 * compared unsigned, which is the order of their code points.
+	 */
+	public int[] byteOrder() {
+		int[] ids = new int[size];
+		for (int id = 0; id < size; id++)
+			ids[id] = id;
+		sortByBytes(ids, new int[size], 0, size);
+		return ids;
+	}
+
+	/**
+	 * Writes the length of the word's UTF-8 bytes and the bytes.
+	 */
+	public void writeWord(int id, DataOutput out) throws IOException {
+		long offset = offsets[id];
+		out.writeInt(lengths[id]);
+		out.write(pages[(int) (offset >>> 32)], (int) offset, lengths[id]);
+	}
+
+	private static int digit(int key, int shift) {
+		return (key >>> shift) & (RADIX - 1);
+	}
+
+	private int add(byte[] bytes, int from, int length, int hash, int occurrences, long position) {
+		tokens += occurrences;
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		int entry;
+		while ((entry = table[slot]) != 0) {
+			int id = entry - 1;
+			if (hashes[id] == hash && equals(id, bytes, from, length)) {
+				counts[id] += occurrences;
+				if (position < firstSeen[id])
+					firstSeen[id] = position;
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (size == counts.length) {
+			grow();
+			slot = hash & (table.length - 1);
+			while (table[slot] != 0)
+				slot = (slot + 1) & (table.length - 1);
+		}
+		hashes[size] = hash;
+		offsets[size] = store(bytes, from, length);
+		lengths[size] = length;
+		counts[size] = occurrences;
+		firstSeen[size] = position;
+		table[slot] = ++size;
+		return size - 1;
+	}
+
+	private int find(byte[] bytes, int from, int length, int hash) {
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		int entry;
+		while ((entry = table[slot]) != 0) {
+			int id = entry - 1;
+			if (hashes[id] == hash && equals(id, bytes, from, length))
+				return id;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private boolean equals(int id, byte[] bytes, int from, int length) {
+		if (lengths[id] != length)
+			return false;
+		long offset = offsets[id];
+		byte[] page = pages[(int) (offset >>> 32)];
+		int start = (int) offset;
+		for (int i = 0; i < length; i++)
+			if (page[start + i] != bytes[from + i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Copies the bytes to the arena and returns their offset: the page in
+	 * the high half, the position in it in the low half.
+	 */
+	private long store(byte[] bytes, int from, int length) {
+		byte[] page = pageCount > 0 ? pages[pageCount - 1] : null;
+		if (page == null || page.length - pagePosition < length) {
+			int pageSize = page == null ? FIRST_PAGE_SIZE : Math.min(MAX_PAGE_SIZE, page.length * 2);
+			page = new byte[Math.max(pageSize, length)];
+			if (pageCount == pages.length)
+				pages = Arrays.copyOf(pages, pageCount * 2);
+			pages[pageCount++] = page;
+			pagePosition = 0;
+		}
+		System.arraycopy(bytes, from, page, pagePosition, length);
+		long offset = ((long) (pageCount - 1) << 32) | pagePosition;
+		pagePosition += length;
+		return offset;
+	}
+
+	/**
+	 * Writes the UTF-8 bytes of the range of the text to the scratch buffer and
+	 * returns their number. Unpaired surrogates become '?', as in
+	 * String.getBytes.
+	 */
+	private int encode(String text, int from, int to) {
+		int n = to - from;
+		if (scratch.length < 3 * n)
+			scratch = new byte[Math.max(3 * n, 2 * scratch.length)];
+		byte[] b = scratch;
+		int p = 0;
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				b[p++] = (byte) c;
+			} else if (c < 0x800) {
+				b[p++] = (byte) (0xC0 | (c >> 6));
+				b[p++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				b[p++] = (byte) (0xF0 | (codePoint >> 18));
+				b[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				b[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				b[p++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				b[p++] = '?';
+			} else {
+				b[p++] = (byte) (0xE0 | (c >> 12));
+				b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				b[p++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return p;
+	}
+
+	private void grow() {
+		int capacity = table.length << 1;
+		int[] newTable = new int[capacity];
+		int mask = capacity - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while (newTable[slot] != 0)
+				slot = (slot + 1) & mask;
+			newTable[slot] = id + 1;
+		}
+		table = newTable;
+		hashes = Arrays.copyOf(hashes, capacity / 2);
+		offsets = Arrays.copyOf(offsets, capacity / 2);
+		lengths = Arrays.copyOf(lengths, capacity / 2);
+		counts = Arrays.copyOf(counts, capacity / 2);
+		firstSeen = Arrays.copyOf(firstSeen, capacity / 2);
+	}
+
+	private void sortByFirstSeen(int[] ids, int[] buffer, int from, int to) {
+		if (to - from < 2)
+			return;
+		int middle = (from + to) >>> 1;
+		sortByFirstSeen(ids, buffer, from, middle);
+		sortByFirstSeen(ids, buffer, middle, to);
+		System.arraycopy(ids, from, buffer, from, to - from);
+		int left = from, right = middle;
+		for (int i = from; i < to; i++) {
+			if (right == to || (left < middle && firstSeen[buffer[left]] <= firstSeen[buffer[right]]))
+				ids[i] = buffer[left++];
+			else
+				ids[i] = buffer[right++];
+		}
+	}
+
+	private void sortByBytes(int[] ids, int[] buffer, int from, int to) {
+		if (to - from < 2)
+			return;
+		int middle = (from + to) >>> 1;
+		sortByBytes(ids, buffer, from, middle);
+		sortByBytes(ids, buffer, middle, to);
+		System.arraycopy(ids, from, buffer, from, to - from);
+		int left = from, right = middle;
+		for (int i = from; i < to; i++) {
+			if (right == to || (left < middle && compareBytes(buffer[left], buffer[right]) <= 0))
+				ids[i] = buffer[left++];
+			else
+				ids[i] = buffer[right++];
+		}
+	}
+
+	private int compareBytes(int id1, int id2) {
+		long offset1 = offsets[id1];
+		long offset2 = offsets[id2];
+		int start1 = (int) offset1;
+		int start2 = (int) offset2;
+		return Arrays.compareUnsigned(pages[(int) (offset1 >>> 32)], start1, start1 + lengths[id1],
+				pages[(int) (offset2 >>> 32)], start2, start2 + lengths[id2]);
+	}
+
+	private static int hash(byte[] bytes, int from, int length) {
+		int hash = 0;
+		for (int i = from; i < from + length; i++)
+			hash = 31 * hash + bytes[i];
+		return mix(hash);
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
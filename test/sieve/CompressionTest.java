@@ -0,0 +1,97 @@
+package sieve;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CompressionTest {
+
+	private File file;
+
+	@After
+	public void deleteFile() {
+		if (file != null)
+			file.delete();
+	}
+
+	@Test
+	public void readsBackBgzfOfManyBlocks() throws Exception {
+		byte[] text = text(300000);
+		file = File.createTempFile("sieve-test", Compression.GZIP_SUFFIX);
+		OutputStream out = Compression.create(file);
+		out.write(text);
+		out.close();
+		assertTrue(Compression.isCompressed(file));
+		assertArrayEquals(text, read(Compression.open(file)));
+	}
+
+	@Test
+	public void readsPlainGzipAndText() throws Exception {
+		byte[] text = text(1000);
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(gzip);
+		out.write(text);
+		out.close();
+		assertArrayEquals(text, read(Compression.open(new ByteArrayInputStream(gzip.toByteArray()))));
+		assertArrayEquals(text, read(Compression.open(new ByteArrayInputStream(text))));
+	}
+
+	@Test
+	public void failsOnTruncatedBgzfBlock() throws Exception {
+		file = File.createTempFile("sieve-test", Compression.GZIP_SUFFIX);
+		OutputStream out = Compression.create(file);
+		out.write(text(300000));
+		out.close();
+		byte[] compressed = Files.readAllBytes(file.toPath());
+		byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+		try {
+			read(Compression.open(new ByteArrayInputStream(truncated)));
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void recognizesTextAsUncompressed() throws Exception {
+		file = File.createTempFile("sieve-test", ".txt");
+		Files.write(file.toPath(), text(100));
+		assertFalse(Compression.isCompressed(file));
+	}
+
+	private static byte[] text(int length) {
+		String[] words = { "the ", "sieve ", "counts ", "words\n" };
+		Random random = new Random(7);
+		StringBuilder text = new StringBuilder();
+		while (text.length() < length)
+			text.append(words[random.nextInt(words.length)]);
+		return text.toString().getBytes();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				out.write(buffer, 0, n);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
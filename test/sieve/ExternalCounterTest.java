@@ -0,0 +1,129 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ExternalCounterTest {
+
+	private static final Cancellable NEVER = new Cancellable() {
+		public boolean isCancelled() {
+			return false;
+		}
+	};
+
+	@Test
+	public void spilledRankingMatchesRankingInMemory() throws Exception {
+		List<String> words = randomWords(200000);
+		ExternalCounter external = new ExternalCounter(1 << 20);
+		WordCounter memory = new WordCounter();
+		for (String word : words) {
+			external.add(word);
+			memory.add(word);
+		}
+		assertTrue(external.isSpilled());
+		assertEquals(rank(memory), rank(external, true));
+	}
+
+	@Test
+	public void tiesKeepFirstOccurrenceAcrossSpills() throws Exception {
+		ExternalCounter counter = new ExternalCounter(1);
+		for (String word : "d c b a a b c d e".split(" "))
+			counter.add(word);
+		assertTrue(counter.isSpilled());
+		assertEquals(Arrays.asList("d", "c", "b", "a", "e"), rank(counter, false));
+	}
+
+	@Test
+	public void countsTokensLongerThan64KB() throws Exception {
+		char[] chars = new char[100000];
+		Arrays.fill(chars, 'é');
+		String longWord = new String(chars);
+		ExternalCounter counter = new ExternalCounter(1);
+		counter.add("short");
+		counter.add(longWord);
+		counter.add(longWord);
+		assertEquals(Arrays.asList(longWord, "short"), rank(counter, false));
+	}
+
+	@Test
+	public void deletesRunsWhenRankingFails() throws Exception {
+		List<File> before = runs();
+		ExternalCounter counter = new ExternalCounter(1 << 12);
+		for (int i = 0; i < 20000; i++)
+			counter.add("w" + (i % 5000));
+		LineSink failing = new LineSink() {
+			public void line(String line) throws Exception {
+				throw new Exception("sink failed");
+			}
+
+			public void close() {
+			}
+		};
+		try {
+			counter.rank(false, failing, new Metrics("test"), NEVER);
+			fail();
+		} catch (Exception e) {
+			assertEquals("sink failed", e.getMessage());
+		}
+		assertEquals(before, runs());
+	}
+
+	private static List<String> randomWords(int count) {
+		String[] letters = { "a", "b", "z", "é", "ß", "中", "😀" };
+		Random random = new Random(42);
+		List<String> words = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int n = 1 + random.nextInt(3); n > 0; n--)
+				word.append(letters[random.nextInt(letters.length)]);
+			if (i % 3 == 0)
+				word.append(random.nextInt(20000));
+			words.add(word.toString());
+		}
+		return words;
+	}
+
+	private static List<String> rank(WordCounter counter) throws Exception {
+		Collected lines = new Collected();
+		Ranking ranking = new Ranking(lines, true, counter.tokens());
+		for (int id : counter.rankOrder())
+			ranking.add(counter.word(id), counter.count(id));
+		ranking.finish();
+		return lines.lines;
+	}
+
+	private static List<String> rank(ExternalCounter counter, boolean withStats) throws Exception {
+		Collected lines = new Collected();
+		counter.rank(withStats, lines, new Metrics("test"), NEVER);
+		return lines.lines;
+	}
+
+	private static List<File> runs() {
+		List<File> runs = new ArrayList<File>();
+		File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+		for (File file : files)
+			if (file.getName().startsWith("sieve") && file.getName().endsWith(".run"))
+				runs.add(file);
+		return runs;
+	}
+
+	private static class Collected implements LineSink {
+		final List<String> lines = new ArrayList<String>();
+
+		public void line(String line) {
+			lines.add(line);
+		}
+
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrequencyListTest {
+
+	private String[] words;
+	private int[] counts;
+	private int[] ranks;
+	private File file;
+
+	@Before
+	public void writeList() throws IOException {
+		char[] chars = new char[70000];
+		Arrays.fill(chars, 'ß');
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; i < 40; i++)
+			list.add("word" + i);
+		list.add("é");
+		list.add(new String(chars));
+		words = list.toArray(new String[0]);
+		counts = new int[words.length];
+		ranks = new int[words.length];
+		for (int i = 0; i < words.length; i++) {
+			counts[i] = words.length - i;
+			ranks[i] = i + 1;
+		}
+		file = File.createTempFile("sieve-test", FrequencyList.SUFFIX);
+		FrequencyList.write(file, words, counts, ranks, words.length, true);
+	}
+
+	@After
+	public void deleteList() {
+		file.delete();
+	}
+
+	@Test
+	public void readsEntriesBackInListOrder() throws IOException {
+		FrequencyList list = FrequencyList.open(file);
+		assertEquals(words.length, list.size());
+		for (int i = 0; i < words.length; i++) {
+			assertEquals(words[i], list.word(i));
+			assertEquals(counts[i], list.count(i));
+			assertEquals(ranks[i], list.rank(i));
+			assertEquals(i, list.find(words[i]));
+		}
+		assertEquals(-1, list.find("missing"));
+		assertEquals(-1, list.find(""));
+	}
+
+	@Test
+	public void readsAsTheTextCountAndSortWrites() throws Exception {
+		final List<String> expected = new ArrayList<String>();
+		long tokens = 0;
+		for (int count : counts)
+			tokens += count;
+		Ranking ranking = new Ranking(new LineSink() {
+			public void line(String line) {
+				expected.add(line);
+			}
+
+			public void close() {
+			}
+		}, true, tokens);
+		for (int i = 0; i < words.length; i++)
+			ranking.add(words[i], counts[i]);
+		ranking.finish();
+
+		FrequencyList list = FrequencyList.open(file);
+		assertEquals(expected, lines(new BufferedReader(list.reader())));
+		List<String> encoded = new ArrayList<String>();
+		for (String line : expected)
+			encoded.add(new String(line.getBytes()));
+		assertEquals(encoded, lines(new BufferedReader(new InputStreamReader(list.stream()))));
+		assertEquals(expected, lines(Inputs.openReader(file)));
+	}
+
+	@Test
+	public void rejectsTruncatedList() throws IOException {
+		assertTrue(FrequencyList.isFrequencyList(file));
+		for (long length : new long[] { 100, file.length() - 1 }) {
+			RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+			truncated.setLength(length);
+			truncated.close();
+			try {
+				FrequencyList.open(file);
+				fail();
+			} catch (IOException e) {
+			}
+		}
+		RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+		truncated.setLength(3);
+		truncated.close();
+		assertFalse(FrequencyList.isFrequencyList(file));
+	}
+
+	private static List<String> lines(BufferedReader in) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		try {
+			String line;
+			while ((line = in.readLine()) != null)
+				lines.add(line);
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,80 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InputsTest {
+
+	private static final Cancellable NEVER = new Cancellable() {
+		public boolean isCancelled() {
+			return false;
+		}
+	};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void pagesThroughBgzfFromIndexedBlocks() throws Exception {
+		List<String> lines = lines(20000);
+		File file = folder.newFile("text.gz");
+		OutputStream out = Compression.create(file);
+		write(out, lines);
+		assertTrue(Compression.isBgzf(file));
+		checkPages(Inputs.index(file, NEVER), lines);
+	}
+
+	@Test
+	public void pagesThroughPlainGzipFromTheStart() throws Exception {
+		List<String> lines = lines(3000);
+		File file = folder.newFile("plain.gz");
+		write(new GZIPOutputStream(Files.newOutputStream(file.toPath())), lines);
+		assertTrue(Compression.isCompressed(file));
+		checkPages(Inputs.index(file, NEVER), lines);
+	}
+
+	private static void checkPages(Lines index, List<String> lines) throws IOException {
+		assertEquals(lines.size(), index.lineCount());
+		int[] firstLines = { 0, 1, LineIndex.STEP - 1, LineIndex.STEP, 2 * LineIndex.STEP + 7, lines.size() - 3 };
+		for (int first : firstLines)
+			assertEquals(lines.subList(first, Math.min(first + 20, lines.size())), index.readLines(first, 20));
+		assertEquals(0, index.readLines(lines.size(), 20).size());
+	}
+
+	/**
+	 * Lines of many lengths ending in each of the three line breaks, long
+	 * enough to cross blocks.
+	 */
+	private static List<String> lines(int count) {
+		List<String> lines = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder line = new StringBuilder("line " + i);
+			for (int n = i % 50; n > 0; n--)
+				line.append(" x");
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+
+	private static void write(OutputStream out, List<String> lines) throws IOException {
+		String[] breaks = { "\n", "\r\n", "\r" };
+		try {
+			for (int i = 0; i < lines.size(); i++)
+				out.write((lines.get(i) + breaks[i % 3]).getBytes());
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LemmaMemoTest {
+
+	private static final String TAG_TOKENS = "awk '{ if ($0 == \"<sieve-line/>\") print; "
+			+ "else for (i = 1; i <= NF; i++) print $i \"\\tNN\\t\" tolower($i) }' \"$1\"";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File memos;
+	private File log;
+
+	@Before
+	public void setUp() throws IOException {
+		assumeTrue(new Tagger("test", "true").readsStandardInput());
+		memos = folder.newFolder("memos");
+		log = new File(folder.getRoot(), "tagged.log");
+		LemmaMemo.forget();
+	}
+
+	@After
+	public void tearDown() {
+		LemmaMemo.forget();
+	}
+
+	@Test
+	public void fillsInRememberedLinesWithoutTagging() throws Exception {
+		Tagger tagger = tagger("tagger.sh", TAG_TOKENS);
+		assertEquals(Arrays.asList("A\tNN\ta", "B\tNN\tb", "C\tNN\tc"), tag(tagger, "A B", "C"));
+		assertEquals(Arrays.asList("C\tNN\tc", "A\tNN\ta", "D\tNN\td"), tag(tagger, "C A", "D"));
+		assertEquals(Arrays.asList("A B", "C", "D"), taggedLines());
+	}
+
+	@Test
+	public void readsAppendedRecordsBack() throws Exception {
+		Tagger tagger = tagger("tagger.sh", TAG_TOKENS);
+		tag(tagger, "A B");
+		tag(tagger, "C");
+		LemmaMemo.forget();
+		assertEquals(Arrays.asList("B\tNN\tb", "C\tNN\tc", "A\tNN\ta"), tag(tagger, "B C A"));
+		assertEquals(Arrays.asList("A B", "C"), taggedLines());
+	}
+
+	@Test
+	public void remembersTokensLongerThan64KB() throws Exception {
+		char[] chars = new char[70000];
+		Arrays.fill(chars, 'x');
+		String token = new String(chars);
+		Tagger tagger = tagger("tagger.sh", TAG_TOKENS);
+		tag(tagger, "A");
+		tag(tagger, token);
+		LemmaMemo.forget();
+		assertEquals(Arrays.asList("A\tNN\ta", token + "\tNN\t" + token), tag(tagger, "A", token));
+		assertEquals(2, taggedLines().size());
+	}
+
+	@Test
+	public void keepsRecordsBeforeATruncatedOne() throws Exception {
+		Tagger tagger = tagger("tagger.sh", TAG_TOKENS);
+		tag(tagger, "A");
+		tag(tagger, "B");
+		File memo = new File(memos, "test.memo");
+		RandomAccessFile file = new RandomAccessFile(memo, "rw");
+		try {
+			file.setLength(file.length() - 3);
+		} finally {
+			file.close();
+		}
+		LemmaMemo.forget();
+		tag(tagger, "A", "B");
+		assertEquals(Arrays.asList("A", "B", "B"), taggedLines());
+		LemmaMemo.forget();
+		tag(tagger, "B", "A");
+		assertEquals(3, taggedLines().size());
+	}
+
+	@Test
+	public void failsWhenTheTaggerDropsLineMarkers() throws Exception {
+		Tagger tagger = tagger("dropping.sh", "grep -v '<sieve-line/>' \"$1\" | " + TAG_TOKENS.replace("\"$1\"", ""));
+		try {
+			tag(tagger, "A", "B");
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("line markers"));
+		}
+	}
+
+	private Tagger tagger(String name, String command) throws IOException {
+		File script = new File(folder.getRoot(), name);
+		FileWriter out = new FileWriter(script);
+		try {
+			out.write("#!/bin/sh\ncat \"$1\" | grep -v '<sieve-line/>' >> " + log.getAbsolutePath() + "\n" + command
+					+ "\n");
+		} finally {
+			out.close();
+		}
+		script.setExecutable(true);
+		return new Tagger("test", script.getAbsolutePath());
+	}
+
+	private List<String> tag(Tagger tagger, String... lines) throws Exception {
+		File input = folder.newFile();
+		Files.write(input.toPath(), Arrays.asList(lines));
+		final List<String> output = new ArrayList<String>();
+		LineSink sink = new LineSink() {
+			public void line(String line) {
+				output.add(line);
+			}
+
+			public void close() {
+			}
+		};
+		assertTrue(LemmaMemo.open(memos, tagger, 0.95).tag(input, tagger, sink, new Job("test")));
+		return output;
+	}
+
+	private List<String> taggedLines() throws IOException {
+		return log.exists() ? Files.readAllLines(log.toPath()) : new ArrayList<String>();
+	}
+}
@@ -0,0 +1,82 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MergeTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void sumsCountsOfTheSameWord() throws Exception {
+		File first = ranking("1 a 3 60.00% 1k", "2 b 2 100.00% 1k", "# words 2", "# tokens 5");
+		File second = ranking("1 b 4 80.00% 1k", "2 c 1 100.00% 1k");
+		assertEquals(Arrays.asList("b 6", "a 3", "c 1"), merge(0, first, second));
+	}
+
+	@Test
+	public void ordersTiesByFirstOccurrenceAcrossRankings() throws Exception {
+		File first = ranking("1 a 2", "2 d 2");
+		File second = ranking("1 c 2", "2 e 1");
+		// a and c start their rankings, d and e come after two words
+		assertEquals(Arrays.asList("a 2", "c 2", "d 2", "e 1"), merge(0, first, second));
+	}
+
+	@Test
+	public void mergesTheSameWhenCountsAreSpilled() throws Exception {
+		List<String> first = new ArrayList<String>();
+		List<String> second = new ArrayList<String>();
+		for (int i = 0; i < 20000; i++) {
+			first.add((i + 1) + " w" + i + " " + (1 + i % 7));
+			second.add((i + 1) + " w" + (i * 3) + " " + (1 + i % 5));
+		}
+		File firstFile = ranking(first.toArray(new String[0]));
+		File secondFile = ranking(second.toArray(new String[0]));
+		assertEquals(merge(0, firstFile, secondFile), merge(1 << 16, firstFile, secondFile));
+	}
+
+	@Test
+	public void rejectsRankingsWithoutCounts() throws Exception {
+		try {
+			merge(0, ranking("a", "b"));
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("has no count"));
+		}
+	}
+
+	private File ranking(String... lines) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), Arrays.asList(lines));
+		return file;
+	}
+
+	/**
+	 * Returns the merged ranking as "word count" lines, without its summary.
+	 */
+	private List<String> merge(long memoryBudget, File... inputs) throws Exception {
+		File output = folder.newFile();
+		Sieve.merge(Arrays.asList(inputs), output, memoryBudget, new Job("test"));
+		List<String> words = new ArrayList<String>();
+		for (String line : Files.readAllLines(output.toPath())) {
+			if (line.startsWith(Ranking.SUMMARY_PREFIX))
+				continue;
+			String[] fields = line.split(" ");
+			words.add(fields[1] + " " + fields[2]);
+		}
+		return words;
+	}
+}
@@ -0,0 +1,49 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessReaderTest {
+
+	@Before
+	public void needsAShell() {
+		assumeTrue(new Tagger("test", "true").readsStandardInput());
+	}
+
+	@Test(timeout = 30000)
+	public void handsOverEveryLineInOrder() throws Exception {
+		ProcessReader reader = new ProcessReader(start("seq 1 5000"), new Metrics("test"));
+		int expected = 1;
+		String[] batch;
+		while ((batch = reader.next()) != null)
+			for (String line : batch)
+				assertEquals(String.valueOf(expected++), line);
+		assertEquals(5001, expected);
+		assertNull(reader.next());
+	}
+
+	@Test(timeout = 30000)
+	public void drainsErrorOutputWhileOutputIsRead() throws Exception {
+		// far more error output than a pipe holds, before any output
+		Process process = start("seq 1 200000 >&2; echo done");
+		ProcessReader reader = new ProcessReader(process, new Metrics("test"));
+		String[] batch = reader.next();
+		assertEquals("done", batch[0]);
+		assertNull(reader.next());
+		assertEquals(0, process.waitFor());
+		StringBuilder last = new StringBuilder();
+		for (int i = 199981; i <= 200000; i++)
+			last.append(i).append('\n');
+		assertEquals(last.toString(), reader.getErrorOutput());
+	}
+
+	private static Process start(String script) throws Exception {
+		Process process = new ProcessBuilder("sh", "-c", script).start();
+		process.getOutputStream().close();
+		return process;
+	}
+}
@@ -0,0 +1,67 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RankingTest {
+
+	@Test
+	public void writesOnlyWordsWithoutStats() throws Exception {
+		Collected lines = new Collected();
+		Ranking ranking = new Ranking(lines, false, 3);
+		ranking.add("a", 2);
+		ranking.add("b", 1);
+		ranking.finish();
+		assertEquals(Arrays.asList("a", "b"), lines.lines);
+	}
+
+	@Test
+	public void writesCoverageBandsAndSummary() throws Exception {
+		Collected lines = new Collected();
+		Ranking ranking = new Ranking(lines, true, 8);
+		ranking.add("a", 4);
+		ranking.add("b", 2);
+		ranking.add("c", 1);
+		ranking.add("d", 1);
+		ranking.finish();
+		assertEquals(Arrays.asList("1 a 4 50.00% 1k", "2 b 2 75.00% 1k", "3 c 1 87.50% 1k", "4 d 1 100.00% 1k",
+				"# words 4", "# tokens 8", "# once 2 50.00% of words 25.00% of tokens",
+				"# twice 1 25.00% of words 25.00% of tokens"), lines.lines);
+		assertEquals(4, ranking.size());
+	}
+
+	@Test
+	public void startsANewBandEveryThousandRanks() throws Exception {
+		Collected lines = new Collected();
+		Ranking ranking = new Ranking(lines, true, 1001);
+		for (int i = 0; i < 1001; i++)
+			ranking.add("w" + i, 1);
+		assertEquals("1000 w999 1 99.90% 1k", lines.lines.get(999));
+		assertEquals("1001 w1000 1 100.00% 2k", lines.lines.get(1000));
+	}
+
+	@Test
+	public void summarizesAnEmptyRanking() throws Exception {
+		Collected lines = new Collected();
+		Ranking ranking = new Ranking(lines, true, 0);
+		ranking.finish();
+		assertEquals(Arrays.asList("# words 0", "# tokens 0", "# once 0 0.00% of words 0.00% of tokens",
+				"# twice 0 0.00% of words 0.00% of tokens"), lines.lines);
+	}
+
+	private static class Collected implements LineSink {
+		final List<String> lines = new ArrayList<String>();
+
+		public void line(String line) {
+			lines.add(line);
+		}
+
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SieveTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void needsAShell() {
+		assumeTrue(new Tagger("test", "true").readsStandardInput());
+	}
+
+	@Test(timeout = 30000)
+	public void killsTheTaggerWhenTheSinkFails() throws Exception {
+		File pid = new File(folder.getRoot(), "pid");
+		Tagger tagger = tagger("echo $$ > " + pid.getAbsolutePath() + "; seq 1 5000; exec sleep 60");
+		LineSink failing = new LineSink() {
+			public void line(String line) throws Exception {
+				throw new Exception("sink failed");
+			}
+
+			public void close() {
+			}
+		};
+		try {
+			Sieve.tag(folder.newFile(), tagger, failing, new Job("test"));
+			fail();
+		} catch (Exception e) {
+			assertEquals("sink failed", e.getMessage());
+		}
+		long tagged = Long.parseLong(new String(Files.readAllBytes(pid.toPath())).trim());
+		ProcessHandle process = ProcessHandle.of(tagged).orElse(null);
+		if (process != null)
+			process.onExit().get();
+		assertFalse(process != null && process.isAlive());
+	}
+
+	@Test(timeout = 30000)
+	public void dropsThePoolSessionWhenTheInputIsCutShort() throws Exception {
+		File input = folder.newFile("input.txt.gz");
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(input));
+		try {
+			for (int i = 0; i < 100000; i++)
+				out.write(("Sentence number " + i + ".\n").getBytes());
+		} finally {
+			out.close();
+		}
+		RandomAccessFile file = new RandomAccessFile(input, "rw");
+		try {
+			file.setLength(file.length() / 2);
+		} finally {
+			file.close();
+		}
+		List<File> before = spools();
+		Tagger tagger = new Tagger("test", tagger("cat \"$1\"").getPath(), 2);
+		try {
+			Sieve.tag(input, tagger, new LineSink() {
+				public void line(String line) {
+				}
+
+				public void close() {
+				}
+			}, new Job("test"));
+			fail();
+		} catch (IOException e) {
+		}
+		assertEquals(before, spools());
+	}
+
+	private static List<File> spools() {
+		List<File> spools = new ArrayList<File>();
+		for (File file : new File(System.getProperty("java.io.tmpdir")).listFiles())
+			if (file.getName().startsWith("sieve") && file.getName().endsWith(".tmp"))
+				spools.add(file);
+		Collections.sort(spools);
+		return spools;
+	}
+
+	private Tagger tagger(String command) throws IOException {
+		File script = new File(folder.getRoot(), "tagger.sh");
+		FileWriter out = new FileWriter(script);
+		try {
+			out.write("#!/bin/sh\n" + command + "\n");
+		} finally {
+			out.close();
+		}
+		script.setExecutable(true);
+		return new Tagger("test", script.getAbsolutePath());
+	}
+}
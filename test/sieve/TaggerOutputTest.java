@@ -0,0 +1,39 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TaggerOutputTest {
+
+	@Test
+	public void countsTheLemmaColumn() {
+		assertEquals("be", TaggerOutput.lemma("is\tVBZ\tbe"));
+	}
+
+	@Test
+	public void countsUnknownLemmasAsTheWord() {
+		assertEquals("Zorblax", TaggerOutput.lemma("Zorblax\tNP\t" + TaggerOutput.UNKNOWN));
+	}
+
+	@Test
+	public void countsTheFirstOfSeveralLemmas() {
+		assertEquals("lie", TaggerOutput.lemma("lay\tVVD\tlie|lay"));
+	}
+
+	@Test
+	public void ignoresTrailingTabs() {
+		assertEquals("NN", TaggerOutput.lemma("word\tNN\t"));
+		assertEquals("word", TaggerOutput.lemma("word\t\t"));
+	}
+
+	@Test
+	public void countsLinesWithoutTabsWhole() {
+		TaggerOutput parser = new TaggerOutput();
+		parser.parse("<s id=1>");
+		assertEquals(0, parser.lemmaStart());
+		assertEquals(8, parser.lemmaEnd());
+		assertEquals(8, parser.wordEnd());
+		assertEquals(parser.posStart(), parser.posEnd());
+	}
+}
@@ -0,0 +1,125 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TaggerPoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File log;
+
+	@Before
+	public void setUp() {
+		assumeTrue(new Tagger("test", "true").readsStandardInput());
+		log = new File(folder.getRoot(), "started.log");
+	}
+
+	@Test(timeout = 60000)
+	public void handsOnOutputInInputOrder() throws Exception {
+		Tagger tagger = tagger("awk '{ print $0 \"\\tNN\" }' \"$1\"", 3);
+		List<String> lines = sentences(200000);
+		Collected output = new Collected();
+		TaggerPool.Session session = TaggerPool.get(tagger).open(output, new Metrics("test"), size(lines));
+		for (String line : lines)
+			session.line(line);
+		session.close();
+		assertEquals(lines.size(), output.lines.size());
+		for (int i = 0; i < lines.size(); i++)
+			assertEquals(lines.get(i) + "\tNN", output.lines.get(i));
+		assertEquals(3, Files.readAllLines(log.toPath()).size());
+	}
+
+	@Test(timeout = 60000)
+	public void failsWithTheErrorOutputOfAFailedPart() throws Exception {
+		Tagger tagger = tagger("if grep -q broken \"$1\"; then echo 'cannot tag' >&2; exit 3; fi; cat \"$1\"", 3);
+		List<String> lines = sentences(200000);
+		lines.set(150000, "broken.");
+		Collected output = new Collected();
+		TaggerPool.Session session = TaggerPool.get(tagger).open(output, new Metrics("test"), size(lines));
+		try {
+			for (String line : lines)
+				session.line(line);
+			session.close();
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("exited with status 3"));
+			assertTrue(e.getMessage(), e.getMessage().contains("cannot tag"));
+		}
+		assertTrue(output.lines.size() < 150000);
+	}
+
+	@Test(timeout = 60000)
+	public void killsItsProcessesWhenCancelled() throws Exception {
+		Tagger tagger = tagger("exec sleep 60", 2);
+		List<String> lines = sentences(200000);
+		TaggerPool.Session session = TaggerPool.get(tagger).open(new Collected(), new Metrics("test"), size(lines));
+		for (String line : lines)
+			session.line(line);
+		session.cancel();
+		try {
+			session.close();
+			fail();
+		} catch (InterruptedException e) {
+		}
+		for (String pid : Files.readAllLines(log.toPath())) {
+			ProcessHandle process = ProcessHandle.of(Long.parseLong(pid)).orElse(null);
+			if (process != null)
+				process.onExit().get();
+			assertFalse(process != null && process.isAlive());
+		}
+	}
+
+	private Tagger tagger(String command, int processes) throws IOException {
+		File script = new File(folder.getRoot(), "tagger.sh");
+		FileWriter out = new FileWriter(script);
+		try {
+			out.write("#!/bin/sh\necho $$ >> " + log.getAbsolutePath() + "\n" + command + "\n");
+		} finally {
+			out.close();
+		}
+		script.setExecutable(true);
+		return new Tagger("test", script.getAbsolutePath(), processes);
+	}
+
+	private static List<String> sentences(int count) {
+		List<String> lines = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++)
+			lines.add("Sentence number " + i + ".");
+		return lines;
+	}
+
+	private static long size(List<String> lines) {
+		long size = 0;
+		for (String line : lines)
+			size += line.length() + 1;
+		return size;
+	}
+
+	private static class Collected implements LineSink {
+		final List<String> lines = new ArrayList<String>();
+
+		public void line(String line) {
+			lines.add(line);
+		}
+
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package sieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TopKCounterTest {
+
+	@Test
+	public void countsExactlyWhileEveryWordIsMonitored() throws Exception {
+		TopKCounter counter = new TopKCounter(2, 0.1, false);
+		for (String word : "a b a c a b".split(" "))
+			counter.add(word);
+		assertEquals(Arrays.asList("1 a 3 0", "2 b 2 0", "# tokens 6", "# unlisted at most 1"), rank(counter));
+	}
+
+	@Test
+	public void listsWordsAboveTheBoundBeyondK() throws Exception {
+		TopKCounter counter = new TopKCounter(1, 0.5, false);
+		for (String word : "a b c a a b b".split(" "))
+			counter.add(word);
+		// b last replaced c, which had been counted twice
+		assertEquals(Arrays.asList("1 b 4 2", "2 a 3 1", "# tokens 7", "# unlisted at most 2"), rank(counter));
+	}
+
+	@Test
+	public void boundsHoldOnASkewedStream() throws Exception {
+		checkBounds(false);
+	}
+
+	@Test
+	public void boundsHoldWithTheSketch() throws Exception {
+		checkBounds(true);
+	}
+
+	private static void checkBounds(boolean sketch) throws Exception {
+		double error = 0.01;
+		TopKCounter counter = new TopKCounter(10, error, sketch);
+		Map<String, Integer> exact = new HashMap<String, Integer>();
+		Random random = new Random(7);
+		int tokens = 200000;
+		for (int i = 0; i < tokens; i++) {
+			// roughly Zipfian over 5000 words
+			String word = "w" + (int) Math.floor(Math.pow(5000, random.nextDouble()));
+			counter.add(word);
+			Integer count = exact.get(word);
+			exact.put(word, count == null ? 1 : count + 1);
+		}
+		List<String> lines = rank(counter);
+		assertEquals("# tokens " + tokens, lines.get(lines.size() - 2));
+		String last = lines.get(lines.size() - 1);
+		int unlisted = Integer.parseInt(last.substring(last.lastIndexOf(' ') + 1));
+		assertTrue(unlisted <= error * tokens);
+		Map<String, Integer> listed = new HashMap<String, Integer>();
+		for (String line : lines.subList(0, lines.size() - 2)) {
+			String[] fields = line.split(" ");
+			int count = Integer.parseInt(fields[2]);
+			int overestimate = Integer.parseInt(fields[3]);
+			int actual = exact.get(fields[1]);
+			assertTrue(line + " occurred " + actual, count - overestimate <= actual && actual <= count);
+			listed.put(fields[1], count);
+		}
+		assertTrue(listed.size() >= 10);
+		for (Map.Entry<String, Integer> word : exact.entrySet())
+			if (!listed.containsKey(word.getKey()))
+				assertTrue(word.getKey() + " occurred " + word.getValue(), word.getValue() <= unlisted);
+	}
+
+	private static List<String> rank(TopKCounter counter) throws Exception {
+		final List<String> lines = new ArrayList<String>();
+		counter.rank(new LineSink() {
+			public void line(String line) {
+				lines.add(line);
+			}
+
+			public void close() {
+			}
+		});
+		return lines;
+	}
+}
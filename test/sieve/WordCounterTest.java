@@ -0,0 +1,110 @@
+package sieve;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class WordCounterTest {
+
+	@Test
+	public void ranksByCountThenFirstOccurrence() {
+		WordCounter counter = new WordCounter();
+		for (String word : "c b a b c d a".split(" "))
+			counter.add(word);
+		assertEquals("[c, b, a, d]", words(counter, counter.rankOrder()));
+	}
+
+	@Test
+	public void countsWordsAcrossTableGrowth() {
+		WordCounter counter = new WordCounter();
+		for (int i = 0; i < 100000; i++)
+			counter.add("w" + (i % 30000));
+		assertEquals(30000, counter.size());
+		assertEquals(4, counter.get("w0"));
+		assertEquals(3, counter.get("w29999"));
+		assertEquals(0, counter.get("w30000"));
+		assertEquals(100000, counter.tokens());
+	}
+
+	@Test
+	public void ranksCountsOverSeveralRadixDigits() {
+		WordCounter counter = new WordCounter();
+		counter.add("rare", 1);
+		counter.add("huge", 5000000);
+		counter.add("mid", 3000);
+		counter.add("tie", 3000);
+		assertEquals("[huge, mid, tie, rare]", words(counter, counter.rankOrder()));
+	}
+
+	@Test
+	public void keepsWordsOfEveryLengthAndScript() {
+		char[] chars = new char[1 << 20];
+		Arrays.fill(chars, '中');
+		String[] words = { "a", "été", "😀", new String(chars), "", "z" };
+		WordCounter counter = new WordCounter();
+		for (String word : words)
+			counter.add(word);
+		for (int i = 0; i < words.length; i++) {
+			assertEquals(words[i], counter.word(i));
+			assertEquals(1, counter.get(words[i]));
+		}
+	}
+
+	@Test
+	public void mergeKeepsEarliestFirstOccurrence() {
+		WordCounter first = new WordCounter();
+		first.add("a", 1, 5L);
+		first.add("b", 1, 6L);
+		WordCounter second = new WordCounter();
+		second.add("b", 1, 0L);
+		second.add("c", 1, 1L);
+		first.merge(second);
+		assertEquals(0, first.firstSeen(1));
+		assertEquals("[b, c, a]", words(first, first.appearanceOrder()));
+	}
+
+	@Test
+	public void mergeSumsCounts() {
+		WordCounter first = new WordCounter();
+		first.add("a", 2);
+		first.add("b", 1);
+		WordCounter second = new WordCounter();
+		second.add("b", 3);
+		second.add("c", 1);
+		first.merge(second);
+		assertEquals(2, first.get("a"));
+		assertEquals(4, first.get("b"));
+		assertEquals(1, first.get("c"));
+		assertEquals(7, first.tokens());
+	}
+
+	@Test
+	public void ordersWordsByUnsignedBytes() {
+		WordCounter counter = new WordCounter();
+		for (String word : new String[] { "é", "z", "a", "😀", "ab" })
+			counter.add(word);
+		assertEquals("[a, ab, z, é, 😀]", words(counter, counter.byteOrder()));
+	}
+
+	@Test
+	public void countsRangesLikeWholeWords() {
+		WordCounter counter = new WordCounter();
+		counter.add("word\tNN\tlemma", 8, 13);
+		counter.add("lemma");
+		assertEquals(2, counter.get("lemma"));
+		assertArrayEquals(new int[] { 0 }, counter.rankOrder());
+	}
+
+	private static String words(WordCounter counter, int[] ids) {
+		StringBuilder words = new StringBuilder("[");
+		for (int id : ids) {
+			if (words.length() > 1)
+				words.append(", ");
+			words.append(counter.word(id));
+		}
+		return words.append(']').toString();
+	}
+}